@@ -0,0 +1,54 @@
+package at.yawk.columbus;
+
+/**
+ * Block IDs and data values of a chunk section. Blocks are addressed by their section index and stored as states of
+ * the form (id << 4 | data).
+ */
+abstract class BlockStorage {
+    static final int LENGTH = 16 * 16 * 16;
+
+    /**
+     * Returns the state of the block at the given index.
+     */
+    abstract int get(int index);
+
+    /**
+     * Set the state of the block at the given index.
+     *
+     * @return the storage that now holds the blocks, either this one or a replacement if this storage cannot hold the
+     * new state.
+     */
+    abstract BlockStorage set(int index, int state);
+
+    /**
+     * Returns whether all blocks have the block ID 0 (air).
+     */
+    boolean isEmpty() {
+        for (int i = 0; i < LENGTH; i++) {
+            if (this.get(i) >> 4 != 0) { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether any block has an ID that does not fit into a byte.
+     */
+    boolean hasAdd() {
+        for (int i = 0; i < LENGTH; i++) {
+            if (this.get(i) >> 12 != 0) { return true; }
+        }
+        return false;
+    }
+
+    /**
+     * Create the most compact storage holding the given states.
+     */
+    static BlockStorage of(char[] states) {
+        assert states.length == LENGTH;
+        BlockStorage storage = UniformBlockStorage.of(states[0]);
+        for (int i = 1; i < LENGTH; i++) {
+            storage = storage.set(i, states[i]);
+        }
+        return storage;
+    }
+}
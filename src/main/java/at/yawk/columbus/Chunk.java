@@ -1,9 +1,11 @@
 package at.yawk.columbus;
 
 import at.yawk.columbus.nbt.*;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
-import java.util.Arrays;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.Set;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -48,17 +50,32 @@ public class Chunk {
     private long inhabitatedTime = 0;
 
     /**
-     * A list of all entities in this chunk.
+     * Names of the entity lists of a chunk. Chunks read by {@link at.yawk.columbus.RegionFile} and
+     * {@link at.yawk.columbus.World} keep these lists undecoded until they are first accessed and write untouched
+     * lists back unchanged.
+     *
+     * @see at.yawk.columbus.nbt.NBT#deserialize(java.nio.ByteBuffer, java.util.Set)
      */
-    private Collection<TagCompound> entities = Lists.newArrayList();
+    public static final Set<String> LAZY_LISTS = ImmutableSet.of("Entities", "TileEntities", "TileTicks");
+
+    /**
+     * A list of all entities in this chunk. Adding or removing entities marks this chunk as dirty, changing an entity
+     * tag in place requires a call to {@link #markDirty()}.
+     */
+    private Collection<TagCompound> entities = this.track(Lists.newArrayList());
     /**
      * A list of all tile entities (blocks with special metadata such as signs and chests) in this chunk.
      */
-    private Collection<TagCompound> tileEntities = Lists.newArrayList();
+    private Collection<TagCompound> tileEntities = this.track(Lists.newArrayList());
     /**
      * Active, ticking tiles in this chunk.
      */
-    private Collection<TagCompound> tileTicks = Lists.newArrayList();
+    private Collection<TagCompound> tileTicks = this.track(Lists.newArrayList());
+
+    /**
+     * Whether this chunk was modified since it was loaded or last saved. New chunks start out dirty.
+     */
+    @Setter(AccessLevel.NONE) private volatile boolean dirty = true;
 
     public Chunk(World world, int chunkX, int chunkZ) {
         assert world != null;
@@ -75,6 +92,41 @@ public class Chunk {
         }
     }
 
+    public void setLastUpdated(long lastUpdated) {
+        this.lastUpdated = lastUpdated;
+        this.markDirty();
+    }
+
+    public void setPopulated(boolean populated) {
+        this.populated = populated;
+        this.markDirty();
+    }
+
+    public void setInhabitatedTime(long inhabitatedTime) {
+        this.inhabitatedTime = inhabitatedTime;
+        this.markDirty();
+    }
+
+    public void setEntities(Collection<TagCompound> entities) {
+        this.entities = this.track(entities);
+        this.markDirty();
+    }
+
+    public void setTileEntities(Collection<TagCompound> tileEntities) {
+        this.tileEntities = this.track(tileEntities);
+        this.markDirty();
+    }
+
+    public void setTileTicks(Collection<TagCompound> tileTicks) {
+        this.tileTicks = this.track(tileTicks);
+        this.markDirty();
+    }
+
+    private Collection<TagCompound> track(Collection<TagCompound> tags) {
+        assert tags != null;
+        return new DirtyTrackingCollection<>(tags, this);
+    }
+
     /**
      * Gets the biome at the given coordinates
      *
@@ -95,6 +147,7 @@ public class Chunk {
      */
     public void setBiome(int x, int z, Biome biome) {
         this.getBiomes()[getIndex(x, z)] = biome.getId();
+        this.markDirty();
     }
 
     /**
@@ -121,6 +174,7 @@ public class Chunk {
      */
     public void setHeight(int x, int z, int height) {
         this.getHeightMap()[getIndex(x, z)] = height;
+        this.markDirty();
     }
 
     /**
@@ -136,19 +190,37 @@ public class Chunk {
      * Recalculates the height map for this chunk based on block data.
      */
     public void calculateHeightMap(Lighter lighter) {
-        Arrays.fill(this.getHeightMap(), 0);
+        this.calculateHeightMap(lighter.freeze());
+    }
+
+    /**
+     * Recalculates the height map for this chunk based on block data.
+     */
+    public void calculateHeightMap(LighterTable lighter) {
         for (int x = 0; x < 16; x++) {
             for (int z = 0; z < 16; z++) {
-                for (int sy = this.getSections().length - 1; sy >= 0; sy--) {
-                    ChunkSection sect = this.getSections()[sy];
-                    int y = sect.getHighestBlock(x, z, lighter);
-                    if (y != -1) {
-                        this.getHeightMap()[getIndex(x, z)] = (sy << 4) + y + 1;
-                        break;
-                    }
-                }
+                this.calculateHeight(x, z, lighter);
+            }
+        }
+        this.markDirty();
+    }
+
+    /**
+     * Recalculate the height map entry of a single column.
+     *
+     * @return the new height.
+     */
+    int calculateHeight(int x, int z, LighterTable lighter) {
+        int height = 0;
+        for (int sy = this.getSections().length - 1; sy >= 0; sy--) {
+            int y = this.getSections()[sy].getHighestBlock(x, z, lighter);
+            if (y != -1) {
+                height = (sy << 4) + y + 1;
+                break;
             }
         }
+        this.getHeightMap()[getIndex(x, z)] = height;
+        return height;
     }
 
     /**
@@ -174,38 +246,136 @@ public class Chunk {
             }
             root.addTag("Sections", new TagList(sectionTags));
         }
-        root.addTag("Entities", new TagList(this.getEntities()));
-        root.addTag("TileEntities", new TagList(this.getTileEntities()));
-        root.addTag("TileTicks", new TagList(this.getTileTicks()));
+        root.addTag("Entities", toList(this.getEntities()));
+        root.addTag("TileEntities", toList(this.getTileEntities()));
+        root.addTag("TileTicks", toList(this.getTileTicks()));
         return new NamedTag("", new TagCompound(new NamedTag("Level", root)));
     }
 
+    private static TagList toList(Collection<TagCompound> tags) {
+        TagLazyList undecoded = LazyCompoundCollection.getUndecoded(tags);
+        // the copy shares the raw bytes, changes to the returned tree must not reach this chunk
+        return undecoded == null ? new TagList(tags) : undecoded.clone();
+    }
+
+    /**
+     * Write this chunk as the root value of the given writer. Produces the same bytes as serializing the result of
+     * {@link #serialize()}, but sections are written straight from their arrays instead of going through a tag tree.
+     */
+    public void writeTo(NbtWriter writer) throws IOException {
+        ChunkSection[] sections = this.getSections();
+        boolean[] nonEmpty = new boolean[sections.length];
+        int sectionCount = 0;
+        for (int i = 0; i < sections.length; i++) {
+            if (!sections[i].isEmpty()) {
+                nonEmpty[i] = true;
+                sectionCount++;
+            }
+        }
+
+        writer.name("");
+        writer.beginCompound();
+        writer.name("Level");
+        writer.beginCompound();
+        // same entry order as serialize()
+        writer.name("xPos");
+        writer.intValue(this.getChunkX());
+        writer.name("zPos");
+        writer.intValue(this.getChunkZ());
+        writer.name("LastUpdate");
+        writer.longValue(this.getLastUpdated());
+        writer.name("TerrainPopulated");
+        writer.byteValue((byte) (this.isPopulated() ? 1 : 0));
+        writer.name("InhabitedTime");
+        writer.longValue(this.getInhabitatedTime());
+        if (!Util.isAll((byte) -1, this.getBiomes())) {
+            writer.name("Biomes");
+            writer.byteArray(this.getBiomes());
+        }
+        writer.name("HeightMap");
+        writer.intArray(this.getHeightMap());
+        writer.name("Sections");
+        writer.beginList(sectionCount == 0 ? TagType.BYTE : TagType.COMPOUND, sectionCount);
+        for (int i = 0; i < sections.length; i++) {
+            if (nonEmpty[i]) {
+                sections[i].writeTo(writer);
+            }
+        }
+        writer.endList();
+        writeList(writer, "Entities", this.getEntities());
+        writeList(writer, "TileEntities", this.getTileEntities());
+        writeList(writer, "TileTicks", this.getTileTicks());
+        writer.endCompound();
+        writer.endCompound();
+    }
+
+    private static void writeList(NbtWriter writer, String name, Collection<TagCompound> tags) throws IOException {
+        writer.name(name);
+        TagLazyList undecoded = LazyCompoundCollection.getUndecoded(tags);
+        if (undecoded != null) {
+            // never accessed since it was read, copy the original bytes
+            writer.tagValue(undecoded);
+            return;
+        }
+        writer.beginList(tags.isEmpty() ? TagType.BYTE : TagType.COMPOUND, tags.size());
+        for (TagCompound tag : tags) {
+            writer.tagValue(tag);
+        }
+        writer.endList();
+    }
+
+    /**
+     * Serialize this chunk to an uncompressed NBT byte array.
+     */
+    public byte[] serializeArray() {
+        ByteBufferDataOutput res = new ByteBufferDataOutput(0x4000);
+        try {
+            this.writeTo(new NbtWriter(res));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return res.toByteArray();
+    }
+
     public static Chunk deserialize(World world, NamedTag from) {
         TagCompound root = from.getValue().asCompound().getTag("Level").asCompound();
         Chunk chunk = new Chunk(world, root.getInt("xPos"), root.getInt("zPos"));
-        root.getOptional("LastUpdate").ifPresent(tag -> chunk.lastUpdated = tag.getLong());
-        root.getOptional("TerrainPopulated").ifPresent(tag -> chunk.populated = tag.getByte() != 0);
-        root.getOptional("InhabitedTime").ifPresent(tag -> chunk.inhabitatedTime = tag.getLong());
-        root.getOptional("Biomes")
-            .ifPresent(tag -> System.arraycopy(((TagArrayByte) tag).getValue(),
-                                               0,
-                                               chunk.biomes,
-                                               0,
-                                               chunk.biomes.length));
-        root.getOptional("Sections").ifPresent(tag -> {
-            tag.asList().getTagsChecked(TagCompound.class).forEach(sectionTag -> {
+        chunk.lastUpdated = root.getLong("LastUpdate", chunk.lastUpdated);
+        chunk.populated = root.getByte("TerrainPopulated", (byte) (chunk.populated ? 1 : 0)) != 0;
+        chunk.inhabitatedTime = root.getLong("InhabitedTime", chunk.inhabitatedTime);
+        Tag biomes = root.getTagIfExists("Biomes");
+        if (biomes != null) {
+            System.arraycopy(((TagArrayByte) biomes).getValue(), 0, chunk.biomes, 0, chunk.biomes.length);
+        }
+        Tag sections = root.getTagIfExists("Sections");
+        if (sections != null) {
+            for (TagCompound sectionTag : sections.asList().getTagsChecked(TagCompound.class)) {
                 ChunkSection section = ChunkSection.deserialize(chunk, sectionTag);
                 chunk.sections[section.getChunkY()] = section;
-            });
-        });
-        root.getOptional("Entities").ifPresent(tag -> chunk.entities = tag.asList().getTagsChecked(TagCompound.class));
-        root.getOptional("TileEntities")
-            .ifPresent(tag -> chunk.tileEntities = tag.asList().getTagsChecked(TagCompound.class));
-        root.getOptional("TileTicks")
-            .ifPresent(tag -> chunk.tileTicks = tag.asList().getTagsChecked(TagCompound.class));
+            }
+        }
+        Tag entities = root.getTagIfExists("Entities");
+        if (entities != null) {
+            chunk.entities = chunk.track(readList(entities));
+        }
+        Tag tileEntities = root.getTagIfExists("TileEntities");
+        if (tileEntities != null) {
+            chunk.tileEntities = chunk.track(readList(tileEntities));
+        }
+        Tag tileTicks = root.getTagIfExists("TileTicks");
+        if (tileTicks != null) {
+            chunk.tileTicks = chunk.track(readList(tileTicks));
+        }
+        chunk.clearDirty();
         return chunk;
     }
 
+    private static Collection<TagCompound> readList(Tag list) {
+        return list instanceof TagLazyList ?
+                new LazyCompoundCollection((TagLazyList) list) :
+                list.asList().getTagsChecked(TagCompound.class);
+    }
+
     /**
      * Set the block ID and data at the given coordinates.
      */
@@ -222,6 +392,21 @@ public class Chunk {
         }
     }
 
+    /**
+     * Flag this chunk as modified so it is written back when it is evicted or saved.
+     */
+    public void markDirty() {
+        // avoid the volatile write on every block change of an already modified chunk
+        if (!this.dirty) { this.dirty = true; }
+    }
+
+    /**
+     * Flag this chunk as saved.
+     */
+    void clearDirty() {
+        this.dirty = false;
+    }
+
     private static int getIndex(int x, int z) {
         return (z & 0b1111) << 4 | x & 0b1111;
     }
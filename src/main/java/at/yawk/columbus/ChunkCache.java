@@ -0,0 +1,33 @@
+package at.yawk.columbus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded set of resident chunks of a lazily loaded world, ordered by last access. When more than the maximum
+ * amount of chunks are added the least recently used chunk is handed to the eviction listener, which returns whether
+ * the chunk could be removed. Chunks that could not be removed stay in the cache and are offered again on the next
+ * insertion.
+ */
+class ChunkCache extends LinkedHashMap<Long, Chunk> {
+    private static final long serialVersionUID = 1L;
+
+    private final int capacity;
+    private final Predicate<Chunk> evictionListener;
+
+    ChunkCache(int capacity, Predicate<Chunk> evictionListener) {
+        super(16, 0.75F, true);
+        assert capacity > 0 : capacity;
+        this.capacity = capacity;
+        this.evictionListener = evictionListener;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+        if (this.size() <= this.capacity) {
+            return false;
+        }
+        return this.evictionListener.test(eldest.getValue());
+    }
+}
@@ -1,8 +1,11 @@
 package at.yawk.columbus;
 
+import at.yawk.columbus.nbt.NbtWriter;
+import at.yawk.columbus.nbt.Tag;
 import at.yawk.columbus.nbt.TagArrayByte;
 import at.yawk.columbus.nbt.TagByte;
 import at.yawk.columbus.nbt.TagCompound;
+import java.io.IOException;
 import java.util.Arrays;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -30,21 +33,25 @@ public class ChunkSection {
     @Getter private final byte chunkY;
 
     /**
-     * Block IDs of this chunk.
+     * Block IDs and data values of this section. New sections share a single immutable air storage that is replaced by
+     * a paletted (and later dense) storage on the first write of a different block.
      */
-    private final short[] blockIds = new short[LENGTH];
+    private BlockStorage blocks = UniformBlockStorage.AIR;
     /**
-     * Block data values in this chunk.
+     * Brightness values coming from other blocks of the blocks in this chunk. Starts out uniformly dark.
      */
-    private final byte[] blockData = new byte[LENGTH];
+    @Getter(AccessLevel.PACKAGE) private NibbleArray lightBlock = new NibbleArray(LENGTH);
     /**
-     * Brightness values coming from other blocks of the blocks in this chunk.
+     * Brightness values coming from the sky of the blocks in this chunk. Starts out uniformly bright, like the sections
+     * minecraft does not store.
      */
-    private final byte[] lightBlock = new byte[LENGTH];
+    @Getter(AccessLevel.PACKAGE) private NibbleArray lightSky = new NibbleArray(LENGTH, 15);
+
     /**
-     * Brightness values coming from the sky of the blocks in this chunk.
+     * One bit per column (z << 4 | x) that is set if the column contains any block other than air in this section.
+     * Air is assumed to be transparent, so columns without a bit can be skipped when looking for opaque blocks.
      */
-    private final byte[] lightSky = new byte[LENGTH];
+    private final long[] nonAirColumns = new long[4];
 
     /**
      * Find the highest block y-coordinate in the given column, according to the opacity values supplied by the given
@@ -53,8 +60,20 @@ public class ChunkSection {
      * @return The y-coordinate or -1 if the column is empty (or translucent).
      */
     public int getHighestBlock(int x, int z, Lighter lighter) {
+        return this.getHighestBlock(x, z, lighter.freeze());
+    }
+
+    /**
+     * Find the highest block y-coordinate in the given column, according to the opacity values of the given table.
+     *
+     * @return The y-coordinate or -1 if the column is empty (or translucent).
+     */
+    public int getHighestBlock(int x, int z, LighterTable lighter) {
+        int column = (z & 0xf) << 4 | x & 0xf;
+        if (!this.hasNonAirBlock(column)) { return -1; }
+        BlockStorage blocks = this.getBlocks();
         for (int y = 15; y >= 0; y--) {
-            if (lighter.getOpacity(this.blockIds[getIndex(x, y, z)]) != 0) {
+            if (lighter.opacity(blocks.get(y << 8 | column) >> 4) != 0) {
                 return y;
             }
         }
@@ -65,7 +84,41 @@ public class ChunkSection {
      * Returns whether this section is entirely empty (only air).
      */
     public boolean isEmpty() {
-        return Util.isAllZero(this.getBlockIds());
+        long[] columns = this.getNonAirColumns();
+        return (columns[0] | columns[1] | columns[2] | columns[3]) == 0;
+    }
+
+    private boolean hasNonAirBlock(int column) {
+        return (this.getNonAirColumns()[column >> 6] & 1L << column) != 0;
+    }
+
+    /**
+     * Recalculate the non-air bit of the given column.
+     */
+    private void updateColumn(int column) {
+        BlockStorage blocks = this.getBlocks();
+        boolean nonAir = false;
+        for (int y = 0; y < 16; y++) {
+            if (blocks.get(y << 8 | column) >> 4 != 0) {
+                nonAir = true;
+                break;
+            }
+        }
+        if (nonAir) {
+            this.getNonAirColumns()[column >> 6] |= 1L << column;
+        } else {
+            this.getNonAirColumns()[column >> 6] &= ~(1L << column);
+        }
+    }
+
+    private void updateAllColumns() {
+        if (this.getBlocks().isEmpty()) {
+            Arrays.fill(this.getNonAirColumns(), 0);
+        } else {
+            for (int column = 0; column < 16 * 16; column++) {
+                this.updateColumn(column);
+            }
+        }
     }
 
     /**
@@ -74,39 +127,103 @@ public class ChunkSection {
     public TagCompound serialize() {
         TagCompound res = new TagCompound();
         res.addTag("Y", new TagByte(this.getChunkY()));
-        byte[][] split = Util.split(this.getBlockIds());
-        res.addTag("Blocks", new TagArrayByte(split[0]));
-        if (!Util.isAllZero(split[1])) {
-            res.addTag("Add", new TagArrayByte(Util.half(split[1])));
+        BlockStorage blocks = this.getBlocks();
+        byte[] lower = new byte[LENGTH];
+        byte[] data = new byte[LENGTH >> 1];
+        for (int i = 0; i < LENGTH; i++) {
+            int state = blocks.get(i);
+            lower[i] = (byte) (state >> 4);
+            data[i >> 1] |= (state & 0xf) << ((i & 1) << 2);
+        }
+        res.addTag("Blocks", new TagArrayByte(lower));
+        if (blocks.hasAdd()) {
+            byte[] upper = new byte[LENGTH >> 1];
+            for (int i = 0; i < LENGTH; i++) {
+                upper[i >> 1] |= (blocks.get(i) >> 12 & 0xf) << ((i & 1) << 2);
+            }
+            res.addTag("Add", new TagArrayByte(upper));
         }
-        res.addTag("Data", new TagArrayByte(Util.half(this.getBlockData())));
-        res.addTag("BlockLight", new TagArrayByte(Util.half(this.getLightBlock())));
-        res.addTag("SkyLight", new TagArrayByte(Util.half(this.getLightSky())));
+        res.addTag("Data", new TagArrayByte(data));
+        res.addTag("BlockLight", new TagArrayByte(this.getLightBlock().getPacked().clone()));
+        res.addTag("SkyLight", new TagArrayByte(this.getLightSky().getPacked().clone()));
         return res;
     }
 
+    /**
+     * Write this section as the next value of the given writer, producing the same bytes as {@link #serialize()}
+     * without building the tag tree or packing the arrays into temporary copies.
+     */
+    public void writeTo(NbtWriter writer) throws IOException {
+        BlockStorage blocks = this.getBlocks();
+
+        writer.beginCompound();
+        // same entry order as serialize()
+        writer.name("Y");
+        writer.byteValue(this.getChunkY());
+        writer.name("Blocks");
+        writer.beginByteArray(LENGTH);
+        for (int i = 0; i < LENGTH; i++) {
+            writer.arrayByte(blocks.get(i) >> 4);
+        }
+        writer.endByteArray();
+        if (blocks.hasAdd()) {
+            writer.name("Add");
+            writer.beginByteArray(LENGTH >> 1);
+            for (int i = 0; i < LENGTH; i += 2) {
+                writer.arrayByte((blocks.get(i + 1) >> 12) << 4 | blocks.get(i) >> 12);
+            }
+            writer.endByteArray();
+        }
+        writer.name("Data");
+        writer.beginByteArray(LENGTH >> 1);
+        for (int i = 0; i < LENGTH; i += 2) {
+            writer.arrayByte((blocks.get(i + 1) & 0xf) << 4 | blocks.get(i) & 0xf);
+        }
+        writer.endByteArray();
+        writer.name("BlockLight");
+        writer.byteArray(this.getLightBlock().getPacked());
+        writer.name("SkyLight");
+        writer.byteArray(this.getLightSky().getPacked());
+        writer.endCompound();
+    }
+
     public static ChunkSection deserialize(Chunk chunk, TagCompound from) {
         byte chunkY = from.getByte("Y");
         ChunkSection section = new ChunkSection(chunk, chunkY);
         byte[] lower = ((TagArrayByte) from.getTag("Blocks")).getValue();
-        byte[] upper = from.getOptional("Add")
-                           .map(t -> Util.twice(((TagArrayByte) t).getValue()))
-                           .orElseGet(() -> new byte[LENGTH]);
-        short[] ids = Util.merge(lower, upper);
-        System.arraycopy(ids, 0, section.blockIds, 0, LENGTH);
-
-        byte[] data = Util.twice(((TagArrayByte) from.getTag("Data")).getValue());
-        System.arraycopy(data, 0, section.blockData, 0, LENGTH);
-
-        byte[] blight = Util.twice(((TagArrayByte) from.getTag("BlockLight")).getValue());
-        System.arraycopy(blight, 0, section.lightBlock, 0, LENGTH);
+        Tag add = from.getTagIfExists("Add");
+        byte[] upper = add == null ? null : ((TagArrayByte) add).getValue();
+        byte[] data = ((TagArrayByte) from.getTag("Data")).getValue();
+        char[] states = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            int shift = (i & 1) << 2;
+            int id = lower[i] & 0xff;
+            if (upper != null) {
+                id |= (upper[i >> 1] >> shift & 0xf) << 8;
+            }
+            states[i] = (char) (id << 4 | data[i >> 1] >> shift & 0xf);
+        }
+        section.blocks = BlockStorage.of(states);
+        section.updateAllColumns();
 
-        byte[] slight = Util.twice(((TagArrayByte) from.getTag("SkyLight")).getValue());
-        System.arraycopy(slight, 0, section.lightSky, 0, LENGTH);
+        section.lightBlock = readNibbles(from, "BlockLight");
+        section.lightSky = readNibbles(from, "SkyLight");
 
         return section;
     }
 
+    /**
+     * Copy a packed nibble array of a section tag. The tag array is copied because the tag may still be used by the
+     * caller, uniform arrays are not copied at all.
+     */
+    private static NibbleArray readNibbles(TagCompound from, String name) {
+        byte[] packed = ((TagArrayByte) from.getTag(name)).getValue();
+        if (packed.length != LENGTH >> 1) {
+            throw new IllegalArgumentException(name + " has length " + packed.length);
+        }
+        return NibbleArray.copyOf(packed);
+    }
+
     /**
      * Returns the block ID at the given location.
      * <p/>
@@ -114,7 +231,7 @@ public class ChunkSection {
      * or the entire world.
      */
     public short getBlockId(int x, int y, int z) {
-        return this.getBlockIds()[getIndex(x, y, z)];
+        return (short) (this.getBlocks().get(getIndex(x, y, z)) >> 4);
     }
 
     /**
@@ -124,7 +241,7 @@ public class ChunkSection {
      * or the entire world.
      */
     public byte getBlockData(int x, int y, int z) {
-        return this.getBlockData()[getIndex(x, y, z)];
+        return (byte) (this.getBlocks().get(getIndex(x, y, z)) & 0xf);
     }
 
     /**
@@ -134,9 +251,17 @@ public class ChunkSection {
      * or the entire world.
      */
     public void setBlock(int x, int y, int z, short id, byte data) {
-        int i = getIndex(x, y, z);
-        this.getBlockIds()[i] = id;
-        this.getBlockData()[i] = data;
+        assert id >= 0 && id < 0x1000 : id;
+        int index = getIndex(x, y, z);
+        this.blocks = this.getBlocks().set(index, id << 4 | data & 0xf);
+        int column = index & 0xff;
+        if (id != 0) {
+            this.getNonAirColumns()[column >> 6] |= 1L << column;
+        } else if (this.hasNonAirBlock(column)) {
+            this.updateColumn(column);
+        }
+        this.markDirty();
+        this.getChunk().getWorld().queueLightUpdate(this.getChunk(), this.getChunkY() << 12 | index);
     }
 
     /**
@@ -146,7 +271,7 @@ public class ChunkSection {
      * or the entire world.
      */
     public byte getLightSky(int x, int y, int z) {
-        return this.getLightSky()[getIndex(x, y, z)];
+        return this.getLightSky().get(getIndex(x, y, z));
     }
 
     /**
@@ -156,7 +281,8 @@ public class ChunkSection {
      * or the entire world.
      */
     public void setLightSky(int x, int y, int z, byte light) {
-        this.getLightSky()[getIndex(x, y, z)] = light;
+        this.getLightSky().set(getIndex(x, y, z), light);
+        this.markDirty();
     }
 
     /**
@@ -166,7 +292,7 @@ public class ChunkSection {
      * or the entire world.
      */
     public byte getLightBlock(int x, int y, int z) {
-        return this.getLightBlock()[getIndex(x, y, z)];
+        return this.getLightBlock().get(getIndex(x, y, z));
     }
 
     /**
@@ -176,20 +302,41 @@ public class ChunkSection {
      * or the entire world.
      */
     public void setLightBlock(int x, int y, int z, byte light) {
-        this.getLightBlock()[getIndex(x, y, z)] = light;
+        this.getLightBlock().set(getIndex(x, y, z), light);
+        this.markDirty();
+    }
+
+    /**
+     * Set all blocks of this section to the given ID and data value. The section is then stored as that single block
+     * state until it is modified again.
+     */
+    public void fill(short id, byte data) {
+        assert id >= 0 && id < 0x1000 : id;
+        this.blocks = UniformBlockStorage.of(id << 4 | data & 0xf);
+        Arrays.fill(this.getNonAirColumns(), id == 0 ? 0 : -1L);
+        this.markDirty();
+        this.getChunk().getWorld().queueLightUpdates(this.getChunk(), this.getChunkY() << 12, LENGTH);
     }
 
     /**
      * Set the sky light value of all blocks in this section to 100%.
      */
     public void fullbright() {
-        Arrays.fill(this.getLightSky(), (byte) 15);
+        this.getLightSky().fill(15);
+        this.markDirty();
+    }
+
+    /**
+     * Flag the chunk of this section as modified.
+     */
+    public void markDirty() {
+        this.getChunk().markDirty();
     }
 
     /**
      * Return the index of the block at the given coordinates.
      */
-    private static int getIndex(int x, int y, int z) {
+    static int getIndex(int x, int y, int z) {
         return (y & 0xf) << 8 | (z & 0xf) << 4 | x & 0xf;
     }
 }
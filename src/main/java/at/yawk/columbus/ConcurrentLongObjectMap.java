@@ -0,0 +1,245 @@
+package at.yawk.columbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * Thread-safe map from primitive longs to non-null values.
+ * <p/>
+ * Keys are spread over a fixed number of segments, each an open addressing table of immutable entries with linear
+ * probing. Reads never lock: they probe the current table of a segment, which is published through a volatile field,
+ * and its slots are read with volatile semantics. Writes lock only their segment. Removed entries are replaced by a
+ * tombstone so probe sequences stay intact, tombstones are dropped when a segment is rehashed.
+ */
+final class ConcurrentLongObjectMap<V> {
+    private static final int SEGMENT_BITS = 4;
+    private static final int INITIAL_CAPACITY = 16;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private final Segment<V>[] segments = new Segment[1 << SEGMENT_BITS];
+
+    ConcurrentLongObjectMap() {
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = new Segment<>();
+        }
+    }
+
+    /**
+     * Returns the value for the given key or null if there is none.
+     */
+    public V get(long key) {
+        long hash = hash(key);
+        return this.segmentFor(hash).get(key, (int) hash);
+    }
+
+    /**
+     * Associate the value with the given key.
+     *
+     * @return the previous value or null if there was none.
+     */
+    public V put(long key, V value) {
+        assert value != null;
+        long hash = hash(key);
+        Segment<V> segment = this.segmentFor(hash);
+        synchronized (segment) {
+            return segment.put(key, (int) hash, value, false);
+        }
+    }
+
+    /**
+     * Associate the value with the given key unless the key already has a value.
+     *
+     * @return the existing value or null if the given value was added.
+     */
+    public V putIfAbsent(long key, V value) {
+        assert value != null;
+        long hash = hash(key);
+        Segment<V> segment = this.segmentFor(hash);
+        synchronized (segment) {
+            return segment.put(key, (int) hash, value, true);
+        }
+    }
+
+    /**
+     * Returns the value for the given key, creating it with the given function if there is none. The function is
+     * called at most once per absent key, while the segment of the key is locked.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        long hash = hash(key);
+        Segment<V> segment = this.segmentFor(hash);
+        V value = segment.get(key, (int) hash);
+        if (value != null) { return value; }
+        synchronized (segment) {
+            value = segment.get(key, (int) hash);
+            if (value == null) {
+                value = function.apply(key);
+                assert value != null;
+                segment.put(key, (int) hash, value, false);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Remove the value of the given key.
+     *
+     * @return the removed value or null if there was none.
+     */
+    public V remove(long key) {
+        long hash = hash(key);
+        Segment<V> segment = this.segmentFor(hash);
+        synchronized (segment) {
+            return segment.remove(key, (int) hash);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : this.segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Returns a snapshot of all values. Values added or removed concurrently may or may not be included.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>(this.size());
+        for (Segment<V> segment : this.segments) {
+            AtomicReferenceArray<Entry<V>> table = segment.table;
+            for (int i = 0; i < table.length(); i++) {
+                Entry<V> entry = table.get(i);
+                if (entry != null && entry != Entry.TOMBSTONE) {
+                    values.add(entry.value);
+                }
+            }
+        }
+        return values;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return this.segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    /**
+     * Spread the bits of the key, the top bits select the segment and the low bits the slot.
+     */
+    private static long hash(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    private static final class Entry<V> {
+        @SuppressWarnings("rawtypes")
+        static final Entry TOMBSTONE = new Entry<>(0, null);
+
+        final long key;
+        final V value;
+
+        Entry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @SuppressWarnings("unchecked")
+        static <V> Entry<V> tombstone() {
+            return TOMBSTONE;
+        }
+    }
+
+    private static final class Segment<V> {
+        volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+        volatile int size = 0;
+        /**
+         * Slots that are not null, including tombstones. Only accessed while locked.
+         */
+        int used = 0;
+
+        V get(long key, int hash) {
+            AtomicReferenceArray<Entry<V>> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = hash & mask; ; i = i + 1 & mask) {
+                Entry<V> entry = table.get(i);
+                if (entry == null) { return null; }
+                if (entry != Entry.TOMBSTONE && entry.key == key) { return entry.value; }
+            }
+        }
+
+        V put(long key, int hash, V value, boolean onlyIfAbsent) {
+            AtomicReferenceArray<Entry<V>> table = this.table;
+            int mask = table.length() - 1;
+            int free = -1;
+            for (int i = hash & mask; ; i = i + 1 & mask) {
+                Entry<V> entry = table.get(i);
+                if (entry == null) {
+                    if (free == -1) {
+                        free = i;
+                        this.used++;
+                    }
+                    break;
+                }
+                if (entry == Entry.TOMBSTONE) {
+                    if (free == -1) { free = i; }
+                } else if (entry.key == key) {
+                    if (!onlyIfAbsent) {
+                        table.set(i, new Entry<>(key, value));
+                    }
+                    return entry.value;
+                }
+            }
+            table.set(free, new Entry<>(key, value));
+            this.size++;
+            // keep at least half of the slots null so probes terminate quickly
+            if (this.used * 2 > table.length()) {
+                this.rehash();
+            }
+            return null;
+        }
+
+        V remove(long key, int hash) {
+            AtomicReferenceArray<Entry<V>> table = this.table;
+            int mask = table.length() - 1;
+            for (int i = hash & mask; ; i = i + 1 & mask) {
+                Entry<V> entry = table.get(i);
+                if (entry == null) { return null; }
+                if (entry != Entry.TOMBSTONE && entry.key == key) {
+                    table.set(i, Entry.tombstone());
+                    this.size--;
+                    return entry.value;
+                }
+            }
+        }
+
+        /**
+         * Copy all entries into a new table sized for the current amount of entries and publish it.
+         */
+        private void rehash() {
+            AtomicReferenceArray<Entry<V>> old = this.table;
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < this.size * 4) {
+                capacity <<= 1;
+            }
+            AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<>(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.length(); i++) {
+                Entry<V> entry = old.get(i);
+                if (entry == null || entry == Entry.TOMBSTONE) { continue; }
+                int slot = (int) hash(entry.key) & mask;
+                while (table.get(slot) != null) {
+                    slot = slot + 1 & mask;
+                }
+                table.lazySet(slot, entry);
+            }
+            this.used = this.size;
+            this.table = table;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package at.yawk.columbus;
+
+/**
+ * Block storage with one state per block, used for sections with too many different blocks for a palette.
+ */
+final class DenseBlockStorage extends BlockStorage {
+    private final char[] states = new char[LENGTH];
+
+    DenseBlockStorage(BlockStorage copyOf) {
+        for (int i = 0; i < LENGTH; i++) {
+            this.states[i] = (char) copyOf.get(i);
+        }
+    }
+
+    @Override
+    int get(int index) {
+        return this.states[index];
+    }
+
+    @Override
+    BlockStorage set(int index, int state) {
+        this.states[index] = (char) state;
+        return this;
+    }
+}
@@ -0,0 +1,77 @@
+package at.yawk.columbus;
+
+import com.google.common.collect.ForwardingCollection;
+import com.google.common.collect.ForwardingIterator;
+import java.util.Collection;
+import java.util.Iterator;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Collection view that flags its chunk as modified whenever elements are added or removed. Changes to the elements
+ * themselves are not noticed.
+ */
+@RequiredArgsConstructor
+class DirtyTrackingCollection<E> extends ForwardingCollection<E> {
+    private final Collection<E> delegate;
+    private final Chunk chunk;
+
+    @Override
+    protected Collection<E> delegate() {
+        return this.delegate;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        Iterator<E> iterator = this.delegate().iterator();
+        return new ForwardingIterator<E>() {
+            @Override
+            protected Iterator<E> delegate() {
+                return iterator;
+            }
+
+            @Override
+            public void remove() {
+                super.remove();
+                DirtyTrackingCollection.this.chunk.markDirty();
+            }
+        };
+    }
+
+    @Override
+    public boolean add(E element) {
+        return this.changed(super.add(element));
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> collection) {
+        return this.changed(super.addAll(collection));
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        return this.changed(super.remove(object));
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> collection) {
+        return this.changed(super.removeAll(collection));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> collection) {
+        return this.changed(super.retainAll(collection));
+    }
+
+    @Override
+    public void clear() {
+        if (!this.isEmpty()) {
+            super.clear();
+            this.chunk.markDirty();
+        }
+    }
+
+    private boolean changed(boolean changed) {
+        if (changed) { this.chunk.markDirty(); }
+        return changed;
+    }
+}
@@ -2,6 +2,7 @@ package at.yawk.columbus;
 
 import at.yawk.columbus.nbt.TagCompound;
 import at.yawk.columbus.nbt.TagDouble;
+import at.yawk.columbus.nbt.TagDoubleList;
 import at.yawk.columbus.nbt.TagInt;
 import at.yawk.columbus.nbt.TagList;
 
@@ -15,42 +16,51 @@ public class Entities {
      * Get the X position of an entity from its Tag.
      */
     public static double getEntityX(TagCompound compound) {
-        return compound.getTag("Pos").asList().getTags().get(0).getDouble();
+        return compound.getTag("Pos").asList().getDouble(0);
     }
 
     /**
      * Get the Y position of an entity from its Tag.
      */
     public static double getEntityY(TagCompound compound) {
-        return compound.getTag("Pos").asList().getTags().get(1).getDouble();
+        return compound.getTag("Pos").asList().getDouble(1);
     }
 
     /**
      * Get the Z position of an entity from its Tag.
      */
     public static double getEntityZ(TagCompound compound) {
-        return compound.getTag("Pos").asList().getTags().get(2).getDouble();
+        return compound.getTag("Pos").asList().getDouble(2);
     }
 
     /**
      * Set the X position of an entity in its Tag.
      */
     public static void setEntityX(TagCompound compound, double x) {
-        ((TagDouble) compound.getTag("Pos").asList().getTags().get(0)).setValue(x);
+        setPosition(compound, 0, x);
     }
 
     /**
      * Set the Y position of an entity in its Tag.
      */
     public static void setEntityY(TagCompound compound, double y) {
-        ((TagDouble) compound.getTag("Pos").asList().getTags().get(0)).setValue(y);
+        setPosition(compound, 1, y);
     }
 
     /**
      * Set the Z position of an entity in its Tag.
      */
     public static void setEntityZ(TagCompound compound, double z) {
-        ((TagDouble) compound.getTag("Pos").asList().getTags().get(0)).setValue(z);
+        setPosition(compound, 2, z);
+    }
+
+    private static void setPosition(TagCompound compound, int axis, double value) {
+        TagList position = compound.getTag("Pos").asList();
+        if (position instanceof TagDoubleList) {
+            ((TagDoubleList) position).setDouble(axis, value);
+        } else {
+            position.setTag(axis, new TagDouble(value));
+        }
     }
 
     /**
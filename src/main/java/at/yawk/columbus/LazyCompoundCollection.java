@@ -0,0 +1,47 @@
+package at.yawk.columbus;
+
+import at.yawk.columbus.nbt.TagCompound;
+import at.yawk.columbus.nbt.TagLazyList;
+import com.google.common.collect.ForwardingCollection;
+import java.util.Collection;
+
+/**
+ * Collection of compound tags backed by a {@link at.yawk.columbus.nbt.TagLazyList}. The list is only decoded when the
+ * collection is first accessed, until then it can be written back as it was read.
+ */
+class LazyCompoundCollection extends ForwardingCollection<TagCompound> {
+    private final TagLazyList source;
+    private volatile Collection<TagCompound> delegate;
+
+    LazyCompoundCollection(TagLazyList source) {
+        assert source != null;
+        this.source = source;
+    }
+
+    @Override
+    protected Collection<TagCompound> delegate() {
+        Collection<TagCompound> delegate = this.delegate;
+        if (delegate == null) {
+            synchronized (this) {
+                delegate = this.delegate;
+                if (delegate == null) {
+                    this.delegate = delegate = this.source.getTagsChecked(TagCompound.class);
+                }
+            }
+        }
+        return delegate;
+    }
+
+    /**
+     * Returns the list the given entity collection of a chunk was read from if it was never accessed since, null
+     * otherwise.
+     */
+    static TagLazyList getUndecoded(Collection<TagCompound> tags) {
+        if (tags instanceof DirtyTrackingCollection) {
+            tags = ((DirtyTrackingCollection<TagCompound>) tags).delegate();
+        }
+        if (!(tags instanceof LazyCompoundCollection)) { return null; }
+        LazyCompoundCollection lazy = (LazyCompoundCollection) tags;
+        return lazy.delegate == null ? lazy.source : null;
+    }
+}
@@ -4,23 +4,29 @@ import at.yawk.columbus.nbt.NBT;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
 import lombok.Getter;
 import lombok.Setter;
 import org.apache.mahout.math.list.IntArrayList;
 import org.apache.mahout.math.map.AbstractIntObjectMap;
 import org.apache.mahout.math.map.OpenIntObjectHashMap;
-import org.apache.mahout.math.set.AbstractLongSet;
-import org.apache.mahout.math.set.OpenLongHashSet;
 
 /**
  * A level/save folder.
  */
-public class LevelFolder {
-    private static final Pattern REGION_FILE_NAME = Pattern.compile("r\\.([0-9]+)\\.([0-9]+)\\.mca");
+public class LevelFolder implements Closeable {
+    private static final Pattern REGION_FILE_NAME = Pattern.compile("r\\.(-?[0-9]+)\\.(-?[0-9]+)\\.mca");
 
     public static final int WORLD_REGULAR = 0;
     public static final int WORLD_NETHER = -1;
@@ -31,6 +37,17 @@ public class LevelFolder {
      * The level.dat data.
      */
     @Getter @Setter private Level level;
+    /**
+     * Executor that compresses and serializes the chunks of a region while saving, and inflates and deserializes them
+     * while reading. Defaults to the common ForkJoinPool, set it to <code>Runnable::run</code> to do this work on the
+     * threads handling each region.
+     */
+    @Getter @Setter private Executor compressionExecutor = ForkJoinPool.commonPool();
+    /**
+     * The directory the modification flags of chunks held in memory are relative to: the directory this level was read
+     * from or first saved to, null if neither happened yet.
+     */
+    @Getter private Path baseDirectory;
 
     public LevelFolder() {}
 
@@ -67,22 +84,37 @@ public class LevelFolder {
 
     /**
      * Save this level to the given directory.
+     * <p/>
+     * Modified chunks are only flagged as saved if the directory is the {@link #getBaseDirectory() base directory} of
+     * this level, or becomes it because this level was neither read nor saved before. Saving a copy elsewhere keeps
+     * them modified for a later {@link #printChanges(java.nio.file.Path)}.
+     * <p/>
+     * Lazy worlds are copied completely, loading chunks that are not resident from their region folder. They cannot be
+     * saved into the directory they are loaded from, use {@link #printChanges(java.nio.file.Path)} for that.
      *
      * @param deleteOld whether existing files should be purged.
      * @throws java.io.IOException if at least one operation failed. Note that this method will execute multi-threaded
      *                             in a ForkJoinPool and thus multiple exceptions might happen.
+     * @throws java.lang.IllegalArgumentException if a lazy world is loaded from within the given directory.
      */
     public void print(Path directory, boolean deleteOld) throws IOException {
         assert directory != null;
         assert !Files.exists(directory) || Files.isDirectory(directory) : directory;
+        Path target = directory.toAbsolutePath().normalize();
+        for (World world : this.worlds.values()) {
+            if (world.getStorage() != null &&
+                world.getStorage().getDirectory().toAbsolutePath().normalize().startsWith(target)) {
+                throw new IllegalArgumentException("Cannot print a lazy world into the directory it is loaded from");
+            }
+        }
+        if (this.baseDirectory == null) { this.baseDirectory = target; }
+        boolean clearDirty = target.equals(this.baseDirectory);
         if (deleteOld && Files.exists(directory)) {
             Util.removeRecursive(directory);
         }
         Files.createDirectories(directory);
 
-        try (OutputStream levelFile = Files.newOutputStream(directory.resolve("level.dat"))) {
-            NBT.serializeStreamZipped(levelFile, this.getLevel().serialize());
-        }
+        this.printLevel(directory);
 
         IntArrayList indicies = this.worlds.keys();
 
@@ -99,23 +131,31 @@ public class LevelFolder {
                 ref.compareAndSet(null, e);
                 return;
             }
-            AbstractLongSet requiredRegionFiles = new OpenLongHashSet();
             World world = this.worlds.get(i);
-            for (Chunk chunk : world.getAllChunks()) {
-                requiredRegionFiles.add((chunk.getChunkX() >> 5) | (((long) chunk.getChunkZ() >> 5) << 32L));
+            List<int[]> regions;
+            try {
+                regions = getRegionCoordinates(world);
+            } catch (IOException e) {
+                ref.compareAndSet(null, e);
+                return;
             }
-            requiredRegionFiles.keys().toList().parallelStream().forEach(ri -> {
+            regions.parallelStream().forEach(coordinates -> {
                 if (ref.get() != null) { return; }
 
-                int regionX = (int) (long) ri;
-                int regionZ = (int) (ri >> 32);
+                int regionX = coordinates[0];
+                int regionZ = coordinates[1];
 
                 Path regionFile = worldDir.resolve("r." + regionX + "." + regionZ + ".mca");
                 assert !Files.exists(regionFile) || Files.isRegularFile(regionFile) : regionFile;
                 try (OutputStream o = Files.newOutputStream(regionFile)) {
-                    world.writeRegionFile(regionX, regionZ, new DataOutputStream(o));
+                    world.writeRegionFile(regionX, regionZ, new DataOutputStream(o), this.getCompressionExecutor());
                 } catch (IOException e) {
                     ref.compareAndSet(null, e);
+                    return;
+                }
+                // lazy worlds track modifications relative to their own region folder, not to this copy
+                if (clearDirty && world.getStorage() == null) {
+                    world.getRegion(regionX, regionZ).getChunks().forEach(Chunk::clearDirty);
                 }
             });
         });
@@ -124,14 +164,37 @@ public class LevelFolder {
         if (exc != null) { throw exc; }
     }
 
+    /**
+     * Returns the coordinates (x, z) of all regions of the given world, including the region files of a lazy world
+     * that have no resident chunks.
+     */
+    private static List<int[]> getRegionCoordinates(World world) throws IOException {
+        Set<List<Integer>> regions = new LinkedHashSet<>();
+        for (Region region : world.getRegions()) {
+            regions.add(Arrays.asList(region.getRegionX(), region.getRegionZ()));
+        }
+        if (world.getStorage() != null && Files.isDirectory(world.getStorage().getDirectory())) {
+            try (Stream<Path> files = Files.list(world.getStorage().getDirectory())) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Matcher matcher = REGION_FILE_NAME.matcher(file.getFileName().toString());
+                    if (matcher.matches() && Files.isRegularFile(file)) {
+                        regions.add(Arrays.asList(Integer.parseInt(matcher.group(1)),
+                                                  Integer.parseInt(matcher.group(2))));
+                    }
+                }
+            }
+        }
+        return regions.stream()
+                      .map(region -> new int[]{ region.get(0), region.get(1) })
+                      .collect(Collectors.toList());
+    }
+
     public void read(Path directory) throws IOException {
         assert directory != null;
         assert Files.isDirectory(directory) : directory;
 
-        try (InputStream levelFile = Files.newInputStream(directory.resolve("level.dat"))) {
-            if (getLevel() == null) { setLevel(new Level()); }
-            getLevel().deserialize(NBT.deserializeStreamZipped(levelFile));
-        }
+        this.readLevel(directory);
+        this.baseDirectory = directory.toAbsolutePath().normalize();
 
         AtomicReference<IOException> ref = new AtomicReference<>();
 
@@ -151,11 +214,9 @@ public class LevelFolder {
                     if (!Files.isRegularFile(entry)) { return; }
                     Matcher matcher = REGION_FILE_NAME.matcher(entry.getFileName().toString());
                     if (!matcher.find()) { return; }
-                    int regionX = Integer.parseInt(matcher.group(1));
-                    int regionZ = Integer.parseInt(matcher.group(2));
 
-                    try (InputStream is = Files.newInputStream(entry)) {
-                        world.readRegionFile(regionX, regionZ, new DataInputStream(is));
+                    try (RegionFile region = RegionFile.open(entry)) {
+                        world.readRegionFile(region, this.getCompressionExecutor());
                     } catch (IOException e) {
                         ref.compareAndSet(null, e);
                         return;
@@ -172,4 +233,136 @@ public class LevelFolder {
         IOException exc = ref.get();
         if (exc != null) { throw exc; }
     }
+
+    /**
+     * Open the given save directory without loading any chunks. Chunks of the existing worlds are loaded from their
+     * region files on first access and written back when they are evicted or when this folder is closed.
+     *
+     * @param maxLoadedChunks The maximum amount of chunks each world keeps in memory.
+     */
+    public void readLazy(Path directory, int maxLoadedChunks) throws IOException {
+        assert directory != null;
+        assert Files.isDirectory(directory) : directory;
+
+        this.readLevel(directory);
+
+        for (int i : new int[]{ WORLD_REGULAR, WORLD_NETHER, WORLD_END }) {
+            Path worldDir = directory.resolve(i == 0 ? "region" : "DIM" + i);
+            if (!Files.isDirectory(worldDir)) { continue; }
+            setWorld(i, new World(new WorldProperties(128), new RegionFolder(worldDir), maxLoadedChunks));
+        }
+    }
+
+    private void readLevel(Path directory) throws IOException {
+        try (InputStream levelFile = Files.newInputStream(directory.resolve("level.dat"))) {
+            if (getLevel() == null) { setLevel(new Level()); }
+            getLevel().deserialize(NBT.deserializeStreamZipped(levelFile));
+        }
+    }
+
+    /**
+     * Save only the modified chunks of this level to the given directory, usually the one this level was read from.
+     * Region files without modified chunks are left untouched and existing region files only get the sectors of
+     * modified chunks rewritten. Lazy worlds are flushed to their own region folder instead.
+     *
+     * @throws java.io.IOException if at least one operation failed. Like {@link #print(java.nio.file.Path, boolean)},
+     *                             this method executes multi-threaded.
+     */
+    public void printChanges(Path directory) throws IOException {
+        assert directory != null;
+        assert !Files.exists(directory) || Files.isDirectory(directory) : directory;
+        Files.createDirectories(directory);
+        if (this.baseDirectory == null) { this.baseDirectory = directory.toAbsolutePath().normalize(); }
+
+        this.printLevel(directory);
+
+        AtomicReference<IOException> ref = new AtomicReference<>();
+
+        this.worlds.keys().toList().parallelStream().forEach(i -> {
+            if (ref.get() != null) { return; }
+
+            World world = this.worlds.get(i);
+            if (world.getStorage() != null) {
+                try {
+                    world.flush();
+                } catch (IOException e) {
+                    ref.compareAndSet(null, e);
+                }
+                return;
+            }
+
+            List<List<Chunk>> regions = world.getRegions()
+                                             .stream()
+                                             .map(region -> region.getChunks()
+                                                                  .stream()
+                                                                  .filter(Chunk::isDirty)
+                                                                  .collect(Collectors.toList()))
+                                             .filter(chunks -> !chunks.isEmpty())
+                                             .collect(Collectors.toList());
+            if (regions.isEmpty()) { return; }
+
+            Path worldDir = directory.resolve(i == 0 ? "region" : "DIM" + i);
+            assert !Files.exists(worldDir) || Files.isDirectory(worldDir) : worldDir;
+            try {
+                Files.createDirectories(worldDir);
+            } catch (IOException e) {
+                ref.compareAndSet(null, e);
+                return;
+            }
+            regions.parallelStream().forEach(modified -> {
+                if (ref.get() != null) { return; }
+
+                int regionX = modified.get(0).getChunkX() >> 5;
+                int regionZ = modified.get(0).getChunkZ() >> 5;
+
+                Path regionFile = worldDir.resolve("r." + regionX + "." + regionZ + ".mca");
+                assert !Files.exists(regionFile) || Files.isRegularFile(regionFile) : regionFile;
+                try {
+                    if (Files.exists(regionFile)) {
+                        try (RegionFile region = RegionFile.open(regionFile, true)) {
+                            for (Chunk chunk : modified) {
+                                region.writeChunk(chunk);
+                                chunk.clearDirty();
+                            }
+                        }
+                    } else {
+                        try (OutputStream o = Files.newOutputStream(regionFile)) {
+                            world.writeRegionFile(regionX,
+                                                  regionZ,
+                                                  new DataOutputStream(o),
+                                                  this.getCompressionExecutor());
+                        }
+                        modified.forEach(Chunk::clearDirty);
+                    }
+                } catch (IOException e) {
+                    ref.compareAndSet(null, e);
+                }
+            });
+        });
+
+        IOException exc = ref.get();
+        if (exc != null) { throw exc; }
+    }
+
+    private void printLevel(Path directory) throws IOException {
+        try (OutputStream levelFile = Files.newOutputStream(directory.resolve("level.dat"))) {
+            NBT.serializeStreamZipped(levelFile, this.getLevel().serialize());
+        }
+    }
+
+    /**
+     * Write back and close all lazily loaded worlds. Worlds held in memory entirely are not affected.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (World world : this.worlds.values()) {
+            try {
+                world.close();
+            } catch (IOException e) {
+                if (failure == null) { failure = e; }
+            }
+        }
+        if (failure != null) { throw failure; }
+    }
 }
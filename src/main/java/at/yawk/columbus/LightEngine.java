@@ -0,0 +1,429 @@
+package at.yawk.columbus;
+
+import java.util.Collection;
+
+/**
+ * Flood-fill light engine that computes block light from light emitting blocks and sky light from the height map.
+ * <p/>
+ * Light spreads breadth-first from its sources, losing max(1, opacity) levels for every block it enters. Light never
+ * travels further than 15 blocks, so every source chunk is processed together with the chunks up to two chunks away
+ * and queue entries only need coordinates relative to the source chunk. Two chunks leave room for incremental
+ * updates, where light is first removed up to 15 blocks away from the changed blocks and then spread back in from
+ * there. The queues are growable ring buffers of packed ints.
+ * <p/>
+ * Not thread-safe.
+ */
+class LightEngine {
+    /**
+     * Chunks around the source chunk that light may reach.
+     */
+    private static final int RADIUS = 2;
+    private static final int DIAMETER = RADIUS * 2 + 1;
+    /**
+     * Added to x and z coordinates relative to the source chunk (-32 to 47) to make them positive.
+     */
+    private static final int BIAS = RADIUS * 16;
+
+    private final ChunkSource chunks;
+    private final LighterTable lighter;
+    private final int height;
+
+    private final IntQueue queue = new IntQueue();
+    /**
+     * Blocks whose light is being removed, with their old light level.
+     */
+    private final IntQueue removalQueue = new IntQueue();
+    /**
+     * The chunk being processed and its neighbours, indexed by (dx + RADIUS) * DIAMETER + dz + RADIUS.
+     */
+    private final Chunk[] neighbourhood = new Chunk[DIAMETER * DIAMETER];
+    /**
+     * Section last marked as dirty, to skip redundant marking.
+     */
+    private ChunkSection lastDirty;
+
+    /**
+     * Create an engine that looks up neighbouring chunks in the given world. Only resident chunks are used, loading
+     * chunks of a lazy world could evict chunks that are being lit.
+     */
+    LightEngine(World world, LighterTable lighter) {
+        this(world, lighter, world::getResidentChunk);
+    }
+
+    LightEngine(World world, LighterTable lighter, ChunkSource chunks) {
+        this.chunks = chunks;
+        this.lighter = lighter;
+        this.height = world.getProperties().getHeight();
+    }
+
+    /**
+     * Recalculate all light of the given chunks. Light also spreads into their loaded neighbours.
+     */
+    void relight(Collection<Chunk> chunks) {
+        // reset first so light spreading into a neighbour is not wiped when that neighbour is processed
+        for (Chunk chunk : chunks) {
+            this.resetLight(chunk);
+        }
+        for (Chunk chunk : chunks) {
+            this.spreadLight(chunk);
+        }
+    }
+
+    /**
+     * Spread sky light and block light from the sources in the given chunk, which must have been reset with
+     * {@link #resetLight(Chunk)}. Writes light into chunks up to one chunk away.
+     */
+    void spreadLight(Chunk chunk) {
+        this.load(chunk);
+        this.seedSkyLight(chunk);
+        this.propagate(true);
+        this.seedBlockLight(chunk);
+        this.propagate(false);
+        this.lastDirty = null;
+    }
+
+    /**
+     * Update height map and light around the given changed blocks of a chunk, assuming the light of all other blocks
+     * is correct.
+     *
+     * @param changed chunk-relative block indices of the form (y << 8 | z << 4 | x).
+     */
+    void update(Chunk chunk, int[] changed) {
+        this.load(chunk);
+
+        // fix height map entries, blocks that became (in)directly lit change their sky light too
+        IntQueue skyChanged = new IntQueue();
+        boolean[] columnDone = new boolean[16 * 16];
+        for (int index : changed) {
+            int x = index & 0xf;
+            int z = index >> 4 & 0xf;
+            skyChanged.add(index);
+            if (columnDone[z << 4 | x]) { continue; }
+            columnDone[z << 4 | x] = true;
+            int oldHeight = chunk.getHeight(x, z);
+            int newHeight = chunk.calculateHeight(x, z, this.lighter);
+            if (newHeight != oldHeight) {
+                chunk.markDirty();
+            }
+            for (int y = Math.min(oldHeight, newHeight); y < Math.max(oldHeight, newHeight); y++) {
+                skyChanged.add(y << 8 | z << 4 | x);
+            }
+        }
+
+        while (!skyChanged.isEmpty()) {
+            this.removeLight(skyChanged.poll(), true);
+        }
+        this.propagateRemoval(true);
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                if (!columnDone[z << 4 | x]) { continue; }
+                // removal may have darkened the directly lit part of the column
+                for (int y = chunk.getHeight(x, z); y < this.height; y++) {
+                    this.setSource(x, y, z, 15, true);
+                }
+            }
+        }
+        for (int index : changed) {
+            this.queueNeighbours(index, true);
+        }
+        this.propagate(true);
+
+        for (int index : changed) {
+            this.removeLight(index, false);
+        }
+        this.propagateRemoval(false);
+        for (int index : changed) {
+            int x = index & 0xf;
+            int y = index >> 8;
+            int z = index >> 4 & 0xf;
+            int brightness = this.lighter.emission(chunk.getChunkSection(y >> 4).getBlockId(x, y, z));
+            this.setSource(x, y, z, brightness, false);
+            this.queueNeighbours(index, false);
+        }
+        this.propagate(false);
+        this.lastDirty = null;
+    }
+
+    /**
+     * Set the light of a block in the source chunk to 0 and queue it for removal.
+     */
+    private void removeLight(int index, boolean sky) {
+        int x = index & 0xf;
+        int y = index >> 8;
+        int z = index >> 4 & 0xf;
+        ChunkSection section = this.neighbourhood[RADIUS * DIAMETER + RADIUS].getChunkSection(y >> 4);
+        NibbleArray light = sky ? section.getLightSky() : section.getLightBlock();
+        int level = light.get(index & 0xfff);
+        if (level == 0) { return; }
+        light.set(index & 0xfff, 0);
+        this.markDirty(section);
+        this.removalQueue.add(pack(x, y, z, level));
+    }
+
+    /**
+     * Raise the light of a block in the source chunk to at least the given level and queue it.
+     */
+    private void setSource(int x, int y, int z, int level, boolean sky) {
+        ChunkSection section = this.neighbourhood[RADIUS * DIAMETER + RADIUS].getChunkSection(y >> 4);
+        NibbleArray light = sky ? section.getLightSky() : section.getLightBlock();
+        int index = ChunkSection.getIndex(x, y, z);
+        if (light.get(index) >= level) { return; }
+        light.set(index, level);
+        this.markDirty(section);
+        if (level > 1) {
+            this.queue.add(pack(x, y, z, level));
+        }
+    }
+
+    /**
+     * Queue the lit neighbours of a block in the source chunk so their light spreads back into it.
+     */
+    private void queueNeighbours(int index, boolean sky) {
+        int x = index & 0xf;
+        int y = index >> 8;
+        int z = index >> 4 & 0xf;
+        for (int side = 0; side < 6; side++) {
+            int nx = x + Tables.offsetsXForSide[side];
+            int ny = y + Tables.offsetsYForSide[side];
+            int nz = z + Tables.offsetsZForSide[side];
+            if (ny < 0 || ny >= this.height) { continue; }
+            Chunk chunk = this.getChunk(nx, nz);
+            if (chunk == null) { continue; }
+            ChunkSection section = chunk.getChunkSection(ny >> 4);
+            int level = sky ? section.getLightSky(nx, ny, nz) : section.getLightBlock(nx, ny, nz);
+            if (level > 1) {
+                this.queue.add(pack(nx, ny, nz, level));
+            }
+        }
+    }
+
+    /**
+     * Darken all blocks that were lit by the queued removals. Lit blocks that are at least as bright as the removed
+     * light have another source and are queued to spread their light back into the darkened area.
+     */
+    private void propagateRemoval(boolean sky) {
+        IntQueue removalQueue = this.removalQueue;
+        while (!removalQueue.isEmpty()) {
+            int entry = removalQueue.poll();
+            int x = (entry & 0x7f) - BIAS;
+            int z = (entry >> 7 & 0x7f) - BIAS;
+            int y = entry >> 14 & 0xff;
+            int level = entry >>> 22 & 0xf;
+
+            for (int side = 0; side < 6; side++) {
+                int nx = x + Tables.offsetsXForSide[side];
+                int ny = y + Tables.offsetsYForSide[side];
+                int nz = z + Tables.offsetsZForSide[side];
+                if (ny < 0 || ny >= this.height) { continue; }
+                Chunk chunk = this.getChunk(nx, nz);
+                if (chunk == null) { continue; }
+
+                ChunkSection section = chunk.getChunkSection(ny >> 4);
+                NibbleArray light = sky ? section.getLightSky() : section.getLightBlock();
+                int index = ChunkSection.getIndex(nx, ny, nz);
+                int neighbourLevel = light.get(index);
+                if (neighbourLevel == 0) { continue; }
+                if (neighbourLevel < level) {
+                    light.set(index, 0);
+                    this.markDirty(section);
+                    removalQueue.add(pack(nx, ny, nz, neighbourLevel));
+                } else {
+                    this.queue.add(pack(nx, ny, nz, neighbourLevel));
+                }
+            }
+        }
+    }
+
+    /**
+     * Clear block light and set sky light to 15 above the height map and 0 below it. Only touches the given chunk.
+     */
+    void resetLight(Chunk chunk) {
+        int maxHeight = 0;
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                maxHeight = Math.max(maxHeight, chunk.getHeight(x, z));
+            }
+        }
+        for (int sy = 0; sy < this.height >> 4; sy++) {
+            ChunkSection section = chunk.getChunkSection(sy);
+            section.getLightBlock().fill(0);
+            NibbleArray sky = section.getLightSky();
+            int minY = sy << 4;
+            if (minY >= maxHeight) {
+                sky.fill(15);
+            } else {
+                sky.fill(0);
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        for (int y = Math.max(minY, chunk.getHeight(x, z)); y < minY + 16; y++) {
+                            sky.set(ChunkSection.getIndex(x, y, z), 15);
+                        }
+                    }
+                }
+            }
+            section.markDirty();
+        }
+    }
+
+    /**
+     * Queue the directly lit blocks of the given chunk that can spread light into darker blocks: the top of each column
+     * and the blocks that are higher than the top of a neighbouring column.
+     */
+    private void seedSkyLight(Chunk chunk) {
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                int columnHeight = chunk.getHeight(x, z);
+                int top = columnHeight;
+                for (int side = 2; side < 6; side++) {
+                    top = Math.max(top, this.getHeight(x + Tables.offsetsXForSide[side],
+                                                       z + Tables.offsetsZForSide[side]));
+                }
+                for (int y = columnHeight; y <= top && y < this.height; y++) {
+                    this.queue.add(pack(x, y, z, 15));
+                }
+            }
+        }
+    }
+
+    /**
+     * Set the block light of all light emitting blocks in the given chunk and queue them.
+     */
+    private void seedBlockLight(Chunk chunk) {
+        for (int sy = 0; sy < this.height >> 4; sy++) {
+            ChunkSection section = chunk.getChunkSection(sy);
+            if (section.isEmpty()) { continue; }
+            NibbleArray light = section.getLightBlock();
+            for (int i = 0; i < BlockStorage.LENGTH; i++) {
+                int x = i & 0xf;
+                int y = i >> 8;
+                int z = i >> 4 & 0xf;
+                int brightness = this.lighter.emission(section.getBlockId(x, y, z));
+                if (brightness > light.get(i)) {
+                    light.set(i, brightness);
+                    if (brightness > 1) {
+                        this.queue.add(pack(x, (sy << 4) + y, z, brightness));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Spread the queued light until the queue is empty.
+     */
+    private void propagate(boolean sky) {
+        IntQueue queue = this.queue;
+        while (!queue.isEmpty()) {
+            int entry = queue.poll();
+            int x = (entry & 0x7f) - BIAS;
+            int z = (entry >> 7 & 0x7f) - BIAS;
+            int y = entry >> 14 & 0xff;
+            int level = entry >>> 22 & 0xf;
+
+            for (int side = 0; side < 6; side++) {
+                int nx = x + Tables.offsetsXForSide[side];
+                int ny = y + Tables.offsetsYForSide[side];
+                int nz = z + Tables.offsetsZForSide[side];
+                if (ny < 0 || ny >= this.height) { continue; }
+                Chunk chunk = this.getChunk(nx, nz);
+                if (chunk == null) { continue; }
+
+                ChunkSection section = chunk.getChunkSection(ny >> 4);
+                int newLevel = level - Math.max(1, this.lighter.opacity(section.getBlockId(nx, ny, nz)));
+                if (newLevel <= 0) { continue; }
+                NibbleArray light = sky ? section.getLightSky() : section.getLightBlock();
+                int index = ChunkSection.getIndex(nx, ny, nz);
+                if (light.get(index) >= newLevel) { continue; }
+
+                light.set(index, newLevel);
+                this.markDirty(section);
+                if (newLevel > 1) {
+                    queue.add(pack(nx, ny, nz, newLevel));
+                }
+            }
+        }
+    }
+
+    private void markDirty(ChunkSection section) {
+        if (section != this.lastDirty) {
+            section.markDirty();
+            this.lastDirty = section;
+        }
+    }
+
+    /**
+     * Make the given chunk the source chunk and look up its neighbours.
+     */
+    private void load(Chunk chunk) {
+        for (int dx = -RADIUS; dx <= RADIUS; dx++) {
+            for (int dz = -RADIUS; dz <= RADIUS; dz++) {
+                this.neighbourhood[(dx + RADIUS) * DIAMETER + dz + RADIUS] = dx == 0 && dz == 0 ?
+                        chunk :
+                        this.chunks.getChunk(chunk.getChunkX() + dx, chunk.getChunkZ() + dz);
+            }
+        }
+    }
+
+    /**
+     * Returns the chunk containing the given coordinates relative to the source chunk or null if it is not loaded.
+     */
+    private Chunk getChunk(int x, int z) {
+        if (x < -BIAS || x >= 16 + BIAS || z < -BIAS || z >= 16 + BIAS) { return null; }
+        return this.neighbourhood[((x >> 4) + RADIUS) * DIAMETER + (z >> 4) + RADIUS];
+    }
+
+    /**
+     * Returns the height map value at the given coordinates relative to the source chunk, 0 if it is not loaded.
+     */
+    private int getHeight(int x, int z) {
+        Chunk chunk = this.getChunk(x, z);
+        return chunk == null ? 0 : chunk.getHeight(x, z);
+    }
+
+    private static int pack(int x, int y, int z, int level) {
+        return level << 22 | y << 14 | (z + BIAS) << 7 | x + BIAS;
+    }
+
+    /**
+     * Looks up loaded chunks by their coordinates.
+     */
+    interface ChunkSource {
+        /**
+         * Returns the chunk at the given coordinates (in 16 blocks) or null if it is not loaded.
+         */
+        Chunk getChunk(int x, int z);
+    }
+
+    /**
+     * Growable FIFO queue of ints.
+     */
+    static final class IntQueue {
+        private int[] elements = new int[4096];
+        private int head = 0;
+        private int size = 0;
+
+        void add(int element) {
+            if (this.size == this.elements.length) {
+                int[] elements = new int[this.size * 2];
+                int firstPart = this.elements.length - this.head;
+                System.arraycopy(this.elements, this.head, elements, 0, firstPart);
+                System.arraycopy(this.elements, 0, elements, firstPart, this.head);
+                this.elements = elements;
+                this.head = 0;
+            }
+            this.elements[(this.head + this.size++) & (this.elements.length - 1)] = element;
+        }
+
+        int poll() {
+            assert this.size > 0;
+            int element = this.elements[this.head];
+            this.head = (this.head + 1) & (this.elements.length - 1);
+            this.size--;
+            return element;
+        }
+
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+    }
+}
@@ -15,7 +15,10 @@ public class Lighter {
      * Known block data.
      */
     private final AbstractIntObjectMap<BlockLightData> blocks = new OpenIntObjectHashMap<>();
-    private final int[] lightUpdateBlockList = new int[32768];
+    /**
+     * Table returned by {@link #freeze()}, discarded when light data changes.
+     */
+    private volatile LighterTable table = null;
 
     /**
      * Return either the light data for the given ID or the default light data if it is unknown.
@@ -29,6 +32,7 @@ public class Lighter {
      */
     public void putBlockLightData(int blockId, int opacity, int brightness) {
         this.getBlocks().put(blockId, new BlockLightData(opacity, brightness));
+        this.table = null;
     }
 
     /**
@@ -38,6 +42,25 @@ public class Lighter {
         return this.lookup(blockId).getOpacity();
     }
 
+    /**
+     * Returns an immutable table of the current light data. The table is cached until light data is changed.
+     */
+    public LighterTable freeze() {
+        LighterTable table = this.table;
+        if (table == null) {
+            table = new LighterTable(this);
+            this.table = table;
+        }
+        return table;
+    }
+
+    /**
+     * Returns the light level emitted by the given block ID.
+     */
+    public int getBrightness(int blockId) {
+        return this.lookup(blockId).getBrightness();
+    }
+
     /**
      * Insert the default lighting values.
      */
@@ -0,0 +1,38 @@
+package at.yawk.columbus;
+
+/**
+ * Immutable snapshot of the light data of a {@link Lighter}, stored in dense arrays indexed by block ID. Used by all
+ * height map and light calculations instead of the map lookups of the lighter itself.
+ *
+ * @see Lighter#freeze()
+ */
+public final class LighterTable {
+    /**
+     * Block IDs are 12 bits wide.
+     */
+    static final int BLOCK_ID_COUNT = 1 << 12;
+
+    private final byte[] opacity = new byte[BLOCK_ID_COUNT];
+    private final byte[] emission = new byte[BLOCK_ID_COUNT];
+
+    LighterTable(Lighter lighter) {
+        for (int id = 0; id < BLOCK_ID_COUNT; id++) {
+            this.opacity[id] = (byte) Math.min(Math.max(lighter.getOpacity(id), 0), 0xff);
+            this.emission[id] = (byte) Math.min(Math.max(lighter.getBrightness(id), 0), 15);
+        }
+    }
+
+    /**
+     * Returns the opacity of the given block ID, capped at 255.
+     */
+    public int opacity(int id) {
+        return this.opacity[id] & 0xff;
+    }
+
+    /**
+     * Returns the light level emitted by the given block ID.
+     */
+    public int emission(int id) {
+        return this.emission[id];
+    }
+}
@@ -0,0 +1,139 @@
+package at.yawk.columbus;
+
+import java.util.Arrays;
+
+/**
+ * An array of 4-bit values, packed two per byte in the layout used by minecraft: the value at an even index is stored
+ * in the low nibble and the value at the following odd index in the high nibble.
+ * <p/>
+ * Arrays in which all nibbles have the same value (such as the light of air sections) are stored as that value only.
+ * The packed bytes are allocated on the first write of a different value or when they are requested by
+ * {@link #getData()}.
+ */
+public final class NibbleArray {
+    /**
+     * Packed bytes of a section-sized array for each uniform value.
+     */
+    private static final byte[][] UNIFORM_SECTION = new byte[16][];
+
+    static {
+        for (int i = 0; i < 16; i++) {
+            UNIFORM_SECTION[i] = new byte[BlockStorage.LENGTH >> 1];
+            Arrays.fill(UNIFORM_SECTION[i], (byte) (i << 4 | i));
+        }
+    }
+
+    private final int length;
+    /**
+     * The packed bytes or null if this array is uniform.
+     */
+    private byte[] data;
+    /**
+     * The value of all nibbles if this array is uniform.
+     */
+    private byte uniform;
+
+    /**
+     * Create an array of the given amount of zero nibbles.
+     */
+    public NibbleArray(int length) {
+        this(length, 0);
+    }
+
+    /**
+     * Create an array of the given amount of nibbles that all have the given value.
+     */
+    public NibbleArray(int length, int value) {
+        assert (length & 1) == 0 : length;
+        this.length = length;
+        this.uniform = (byte) (value & 0xf);
+    }
+
+    /**
+     * Create a nibble array backed by the given packed bytes. The array is not copied.
+     */
+    public NibbleArray(byte[] data) {
+        assert data != null;
+        this.length = data.length << 1;
+        this.data = data;
+    }
+
+    /**
+     * Create a nibble array holding the given packed bytes, without keeping a copy if all nibbles are the same.
+     */
+    static NibbleArray copyOf(byte[] packed) {
+        if (packed.length > 0) {
+            byte first = packed[0];
+            if ((first >> 4 & 0xf) == (first & 0xf) && Util.isAll(first, packed)) {
+                return new NibbleArray(packed.length << 1, first);
+            }
+        }
+        return new NibbleArray(packed.clone());
+    }
+
+    /**
+     * Returns the amount of nibbles in this array.
+     */
+    public int length() {
+        return this.length;
+    }
+
+    public byte get(int index) {
+        if (this.data == null) { return this.uniform; }
+        return (byte) (this.data[index >> 1] >> ((index & 1) << 2) & 0xf);
+    }
+
+    public void set(int index, int value) {
+        if (this.data == null) {
+            if ((value & 0xf) == this.uniform) { return; }
+            this.materialize();
+        }
+        int shift = (index & 1) << 2;
+        int i = index >> 1;
+        this.data[i] = (byte) (this.data[i] & ~(0xf << shift) | (value & 0xf) << shift);
+    }
+
+    /**
+     * Set all nibbles to the given value, releasing the packed bytes.
+     */
+    public void fill(int value) {
+        this.data = null;
+        this.uniform = (byte) (value & 0xf);
+    }
+
+    /**
+     * Returns whether all nibbles are known to have the same value.
+     */
+    public boolean isUniform() {
+        return this.data == null;
+    }
+
+    /**
+     * Returns the packed bytes backing this array, allocating them if this array is uniform. Changes to the returned
+     * array are reflected in this array.
+     */
+    public byte[] getData() {
+        if (this.data == null) { this.materialize(); }
+        return this.data;
+    }
+
+    /**
+     * Returns the packed bytes of this array without allocating them if this array is uniform. The returned array may
+     * be shared and must not be modified.
+     */
+    byte[] getPacked() {
+        if (this.data != null) { return this.data; }
+        if (this.length == BlockStorage.LENGTH) { return UNIFORM_SECTION[this.uniform]; }
+        byte[] packed = new byte[this.length >> 1];
+        Arrays.fill(packed, (byte) (this.uniform << 4 | this.uniform));
+        return packed;
+    }
+
+    private void materialize() {
+        byte[] data = new byte[this.length >> 1];
+        if (this.uniform != 0) {
+            Arrays.fill(data, (byte) (this.uniform << 4 | this.uniform));
+        }
+        this.data = data;
+    }
+}
@@ -0,0 +1,141 @@
+package at.yawk.columbus;
+
+import org.apache.mahout.math.map.OpenIntIntHashMap;
+
+/**
+ * Block storage that keeps a palette of the distinct states in the section and a bit-packed array of palette indices.
+ * Indices start out 1 bit wide and are widened to 2, 4 and 8 bits as the palette grows, so an index never spans two
+ * longs. Palettes that would exceed 256 entries are replaced by a {@link DenseBlockStorage}.
+ * <p/>
+ * Palette entries are never removed, a palette may thus contain states that are no longer used.
+ */
+final class PalettedBlockStorage extends BlockStorage {
+    static final int MAX_PALETTE_SIZE = 256;
+    /**
+     * Palette size above which lookups go through a hash map instead of a linear scan.
+     */
+    private static final int LINEAR_LOOKUP_SIZE = 16;
+
+    private int[] palette = new int[2];
+    private int paletteSize = 1;
+    /**
+     * Maps states to their palette index + 1, null while the palette is small.
+     */
+    private OpenIntIntHashMap lookup = null;
+
+    private int bits = 1;
+    private long[] indices = new long[LENGTH / 64];
+
+    /**
+     * Create a storage in which all blocks have state 0.
+     */
+    PalettedBlockStorage() {
+        this(0);
+    }
+
+    /**
+     * Create a storage in which all blocks have the given state.
+     */
+    PalettedBlockStorage(int initialState) {
+        this.palette[0] = initialState;
+    }
+
+    @Override
+    int get(int index) {
+        return this.palette[this.getPaletteIndex(index)];
+    }
+
+    @Override
+    BlockStorage set(int index, int state) {
+        int paletteIndex = this.indexOf(state);
+        if (paletteIndex == -1) {
+            if (this.paletteSize == MAX_PALETTE_SIZE) {
+                return new DenseBlockStorage(this).set(index, state);
+            }
+            paletteIndex = this.add(state);
+        }
+        int bit = index * this.bits;
+        long mask = (1L << this.bits) - 1;
+        long word = this.indices[bit >> 6];
+        this.indices[bit >> 6] = word & ~(mask << (bit & 63)) | (long) paletteIndex << (bit & 63);
+        return this;
+    }
+
+    @Override
+    boolean isEmpty() {
+        for (int i = 0; i < this.paletteSize; i++) {
+            if (this.palette[i] >> 4 != 0) {
+                return super.isEmpty();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    boolean hasAdd() {
+        for (int i = 0; i < this.paletteSize; i++) {
+            if (this.palette[i] >> 12 != 0) {
+                return super.hasAdd();
+            }
+        }
+        return false;
+    }
+
+    private int getPaletteIndex(int index) {
+        int bit = index * this.bits;
+        return (int) (this.indices[bit >> 6] >>> (bit & 63)) & ((1 << this.bits) - 1);
+    }
+
+    private int indexOf(int state) {
+        if (this.lookup != null) {
+            return this.lookup.get(state) - 1;
+        }
+        for (int i = 0; i < this.paletteSize; i++) {
+            if (this.palette[i] == state) { return i; }
+        }
+        return -1;
+    }
+
+    /**
+     * Append a state to the palette, widening the indices if necessary.
+     *
+     * @return the palette index of the state.
+     */
+    private int add(int state) {
+        int paletteIndex = this.paletteSize++;
+        if (paletteIndex == this.palette.length) {
+            int[] palette = new int[paletteIndex * 2];
+            System.arraycopy(this.palette, 0, palette, 0, paletteIndex);
+            this.palette = palette;
+        }
+        this.palette[paletteIndex] = state;
+
+        if (this.lookup != null) {
+            this.lookup.put(state, paletteIndex + 1);
+        } else if (this.paletteSize > LINEAR_LOOKUP_SIZE) {
+            this.lookup = new OpenIntIntHashMap(MAX_PALETTE_SIZE);
+            for (int i = 0; i < this.paletteSize; i++) {
+                this.lookup.put(this.palette[i], i + 1);
+            }
+        }
+
+        if (this.paletteSize > 1 << this.bits) {
+            this.widen();
+        }
+        return paletteIndex;
+    }
+
+    /**
+     * Double the width of the indices.
+     */
+    private void widen() {
+        int bits = this.bits * 2;
+        long[] indices = new long[LENGTH * bits / 64];
+        for (int i = 0; i < LENGTH; i++) {
+            int bit = i * bits;
+            indices[bit >> 6] |= (long) this.getPaletteIndex(i) << (bit & 63);
+        }
+        this.bits = bits;
+        this.indices = indices;
+    }
+}
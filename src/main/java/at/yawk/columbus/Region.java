@@ -0,0 +1,98 @@
+package at.yawk.columbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+import lombok.Getter;
+
+/**
+ * The loaded chunks of one region (32x32 chunks) of a {@link World}.
+ * <p/>
+ * Chunks are stored in a flat array in region file order. Reads do not lock, changes lock only this region.
+ */
+public final class Region {
+    /**
+     * Coordinates of this region in region files = 32 chunks = 512 blocks.
+     */
+    @Getter private final int regionX;
+    @Getter private final int regionZ;
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(RegionFile.CHUNK_COUNT);
+    private volatile int size = 0;
+
+    Region(int regionX, int regionZ) {
+        this.regionX = regionX;
+        this.regionZ = regionZ;
+    }
+
+    /**
+     * Returns the chunk at the given position or null if it is not loaded. Coordinates are in 16 blocks and may be
+     * relative to this region or to the world.
+     */
+    public Chunk getChunk(int x, int z) {
+        return this.chunks.get(RegionFile.getIndex(x, z));
+    }
+
+    /**
+     * Returns a list of the loaded chunks of this region in region file order.
+     */
+    public List<Chunk> getChunks() {
+        List<Chunk> chunks = new ArrayList<>(this.size);
+        for (int i = 0; i < RegionFile.CHUNK_COUNT; i++) {
+            Chunk chunk = this.chunks.get(i);
+            if (chunk != null) { chunks.add(chunk); }
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the amount of loaded chunks in this region.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Returns the chunk at the given position, creating it with the given supplier while this region is locked if it
+     * is not loaded.
+     */
+    Chunk getChunkOrCreate(int x, int z, Supplier<Chunk> factory) {
+        int index = RegionFile.getIndex(x, z);
+        Chunk chunk = this.chunks.get(index);
+        if (chunk != null) { return chunk; }
+        synchronized (this) {
+            chunk = this.chunks.get(index);
+            if (chunk == null) {
+                chunk = factory.get();
+                this.chunks.set(index, chunk);
+                this.size++;
+            }
+            return chunk;
+        }
+    }
+
+    /**
+     * Insert a chunk, replacing any chunk at the same position.
+     */
+    synchronized void putChunk(Chunk chunk) {
+        assert chunk.getChunkX() >> 5 == this.getRegionX() && chunk.getChunkZ() >> 5 == this.getRegionZ();
+        if (this.chunks.getAndSet(RegionFile.getIndex(chunk.getChunkX(), chunk.getChunkZ()), chunk) == null) {
+            this.size++;
+        }
+    }
+
+    /**
+     * Remove the chunk at the given position.
+     *
+     * @return the removed chunk or null if there was none.
+     */
+    synchronized Chunk removeChunk(int x, int z) {
+        Chunk chunk = this.chunks.getAndSet(RegionFile.getIndex(x, z), null);
+        if (chunk != null) { this.size--; }
+        return chunk;
+    }
+}
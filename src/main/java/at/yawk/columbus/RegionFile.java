@@ -0,0 +1,349 @@
+package at.yawk.columbus;
+
+import at.yawk.columbus.nbt.NBT;
+import at.yawk.columbus.nbt.NamedTag;
+import at.yawk.columbus.nbt.NbtProjection;
+import at.yawk.columbus.nbt.TagCompound;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterOutputStream;
+import lombok.Getter;
+
+/**
+ * Random-access handle to a single region (.mca) file.
+ * <p/>
+ * The 8 KiB header is parsed once when the file is opened. Afterwards single chunks can be inflated and deserialized by
+ * their coordinates without reading any other part of the file. Reads go through a memory mapping of the file and may
+ * happen concurrently.
+ * <p/>
+ * Region files opened for writing can additionally store single chunks. A chunk is overwritten in place if its new
+ * payload fits into the sectors it occupies, otherwise it is moved to the first free run of sectors that is large
+ * enough, reusing sectors freed by earlier moves before growing the file. Only the header entries of the written chunk
+ * are updated.
+ */
+public final class RegionFile implements Closeable {
+    static final int SECTOR_LENGTH = 0x1000;
+    static final int CHUNK_COUNT = 32 * 32;
+    static final int HEADER_LENGTH = 2 * SECTOR_LENGTH;
+
+    static final byte COMPRESSION_GZIP = 1;
+    static final byte COMPRESSION_ZLIB = 2;
+
+    /**
+     * The file this region was opened from.
+     */
+    @Getter private final Path path;
+    private final FileChannel channel;
+    private final boolean writable;
+    /**
+     * Mapping of the whole file, replaced when a write grows the file.
+     */
+    private volatile MappedByteBuffer buffer;
+
+    /**
+     * Location entries of the header, (sector << 8 | sectorCount) for each chunk.
+     */
+    private final int[] locations = new int[CHUNK_COUNT];
+    /**
+     * Timestamp entries of the header, in seconds.
+     */
+    private final int[] timestamps = new int[CHUNK_COUNT];
+    /**
+     * Sectors occupied by the header or by chunks. Only maintained for writable files.
+     */
+    private final BitSet usedSectors;
+
+    private RegionFile(Path path, FileChannel channel, boolean writable) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.writable = writable;
+
+        long size = channel.size();
+        if (size == 0 && writable) {
+            // fresh file, write an empty header
+            this.write(ByteBuffer.allocate(HEADER_LENGTH), 0);
+            size = HEADER_LENGTH;
+        }
+        if (size < HEADER_LENGTH) {
+            throw new IOException("Region file " + path + " is truncated (" + size + " bytes)");
+        }
+        // the file is mapped as a single buffer
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Region file " + path + " is too large (" + size + " bytes)");
+        }
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            this.locations[i] = this.buffer.getInt(i << 2);
+            this.timestamps[i] = this.buffer.getInt(SECTOR_LENGTH + (i << 2));
+        }
+
+        if (writable) {
+            this.usedSectors = new BitSet((int) (size / SECTOR_LENGTH) + 1);
+            this.usedSectors.set(0, HEADER_LENGTH / SECTOR_LENGTH);
+            for (int location : this.locations) {
+                if (location != 0) {
+                    this.usedSectors.set(location >>> 8, (location >>> 8) + (location & 0xff));
+                }
+            }
+        } else {
+            this.usedSectors = null;
+        }
+    }
+
+    /**
+     * Open the given region file for reading.
+     */
+    public static RegionFile open(Path path) throws IOException {
+        return open(path, false);
+    }
+
+    /**
+     * Open the given region file.
+     *
+     * @param writable whether chunks may be written to the file. If true, the file is created if it does not exist.
+     */
+    public static RegionFile open(Path path, boolean writable) throws IOException {
+        FileChannel channel = writable ?
+                FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE) :
+                FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new RegionFile(path, channel, writable);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static int getIndex(int x, int z) {
+        return (z & 31) << 5 | x & 31;
+    }
+
+    /**
+     * Returns whether this region contains the chunk at the given coordinates. Coordinates are in 16 blocks and may be
+     * relative to this region or to the world.
+     */
+    public boolean hasChunk(int x, int z) {
+        return this.locations[getIndex(x, z)] != 0;
+    }
+
+    /**
+     * Returns the timestamp (in seconds) stored for the given chunk, or 0 if it does not exist.
+     */
+    public int getTimestamp(int x, int z) {
+        return this.timestamps[getIndex(x, z)];
+    }
+
+    /**
+     * Returns the uncompressed NBT data of the given chunk or null if the chunk does not exist.
+     */
+    public byte[] readChunkData(int x, int z) throws IOException {
+        byte[] compressed;
+        byte compression;
+        // copy the payload while holding the lock, writes may overwrite sectors in place
+        synchronized (this) {
+            int location = this.locations[getIndex(x, z)];
+            if (location == 0) { return null; }
+
+            MappedByteBuffer buffer = this.buffer;
+            long offset = (long) (location >>> 8) * SECTOR_LENGTH;
+            int sectorCount = location & 0xff;
+            if (offset + 5 > buffer.capacity()) {
+                throw new IOException("Chunk " + x + "/" + z + " points outside of " + this.getPath());
+            }
+            int length = buffer.getInt((int) offset) - 1;
+            compression = buffer.get((int) offset + 4);
+            if (length < 0 || length + 5 > sectorCount * SECTOR_LENGTH || offset + 5 + length > buffer.capacity()) {
+                throw new IOException("Chunk " + x + "/" + z + " in " + this.getPath() + " has an invalid length");
+            }
+
+            compressed = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position((int) offset + 5);
+            view.get(compressed);
+        }
+        return inflate(compressed, compression);
+    }
+
+    /**
+     * Returns the NBT tag of the given chunk or null if the chunk does not exist.
+     */
+    public NamedTag readChunkTag(int x, int z) throws IOException {
+        byte[] data = this.readChunkData(x, z);
+        return data == null ? null : NBT.deserialize(ByteBuffer.wrap(data), Chunk.LAZY_LISTS);
+    }
+
+    /**
+     * Reads only the tags at the paths of the given projection from the NBT data of the given chunk.
+     *
+     * @return the tags that were found or null if the chunk does not exist.
+     * @see at.yawk.columbus.nbt.NbtProjection#read(java.nio.ByteBuffer)
+     */
+    public TagCompound readChunkTag(int x, int z, NbtProjection projection) throws IOException {
+        byte[] data = this.readChunkData(x, z);
+        return data == null ? null : projection.read(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Deserializes the given chunk for the given world. The chunk is <i>not</i> added to the world.
+     *
+     * @return the chunk or null if the chunk does not exist in this region.
+     */
+    public Chunk readChunk(World world, int x, int z) throws IOException {
+        NamedTag tag = this.readChunkTag(x, z);
+        return tag == null ? null : Chunk.deserialize(world, tag);
+    }
+
+    /**
+     * Compress and store the given uncompressed NBT data for a chunk. Coordinates are in 16 blocks and may be relative
+     * to this region or to the world.
+     *
+     * @param timestamp the timestamp to store in the header, in seconds.
+     */
+    public void writeChunkData(int x, int z, byte[] data, int timestamp) throws IOException {
+        if (!this.writable) {
+            throw new IOException("Region file " + this.getPath() + " was not opened for writing");
+        }
+        byte[] compressed = deflate(data);
+        int sectorCount = (compressed.length + 5 >> 12) + 1;
+        if (sectorCount > 0xff) {
+            throw new IOException("Chunk " + x + "/" + z + " is too large (" + compressed.length + " bytes)");
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(sectorCount * SECTOR_LENGTH);
+        payload.putInt(compressed.length + 1);
+        payload.put(COMPRESSION_ZLIB);
+        payload.put(compressed);
+        payload.clear();
+
+        synchronized (this) {
+            int index = getIndex(x, z);
+            int sector = this.allocate(this.locations[index], sectorCount);
+            this.write(payload, (long) sector * SECTOR_LENGTH);
+            this.setHeader(index, sector << 8 | sectorCount, timestamp);
+            // the mapping already sees writes through the channel, it only needs to grow with the file
+            long size = this.channel.size();
+            if (size > this.buffer.capacity()) {
+                this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+    }
+
+    /**
+     * Serialize and store the given chunk in this region.
+     */
+    public void writeChunk(Chunk chunk) throws IOException {
+        this.writeChunkData(chunk.getChunkX(),
+                            chunk.getChunkZ(),
+                            chunk.serializeArray(),
+                            (int) (chunk.getLastUpdated() / 1000L));
+    }
+
+    /**
+     * Find sectors for a chunk payload that currently occupies the given location and mark them as used.
+     *
+     * @return the first sector of the payload.
+     */
+    private int allocate(int oldLocation, int sectorCount) throws IOException {
+        if (oldLocation != 0) {
+            int oldSector = oldLocation >>> 8;
+            int oldCount = oldLocation & 0xff;
+            if (sectorCount <= oldCount) {
+                // shrink in place, the tail sectors become free
+                this.usedSectors.clear(oldSector + sectorCount, oldSector + oldCount);
+                return oldSector;
+            }
+            this.usedSectors.clear(oldSector, oldSector + oldCount);
+        }
+
+        // first fit, falls through to the end of the file if no gap is large enough
+        int sector = this.usedSectors.nextClearBit(0);
+        while (true) {
+            int end = this.usedSectors.nextSetBit(sector);
+            if (end == -1 || end - sector >= sectorCount) { break; }
+            sector = this.usedSectors.nextClearBit(end);
+        }
+        if ((long) sector + sectorCount > 0xffffff ||
+            ((long) sector + sectorCount) * SECTOR_LENGTH > Integer.MAX_VALUE) {
+            throw new IOException("Region file " + this.getPath() + " is full");
+        }
+        this.usedSectors.set(sector, sector + sectorCount);
+        return sector;
+    }
+
+    /**
+     * Update the location and timestamp header entries of a single chunk.
+     */
+    private void setHeader(int index, int location, int timestamp) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(4);
+        entry.putInt(0, location);
+        this.write(entry, index << 2);
+        entry.clear();
+        entry.putInt(0, timestamp);
+        this.write(entry, SECTOR_LENGTH + (index << 2));
+        this.locations[index] = location;
+        this.timestamps[index] = timestamp;
+    }
+
+    private void write(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += this.channel.write(data, position);
+        }
+    }
+
+    /**
+     * Compress chunk data using zlib, the compression type used for all chunks written by Columbus.
+     */
+    static byte[] deflate(byte[] raw) {
+        ByteArrayOutputStream res = new ByteArrayOutputStream(8096);
+        DeflaterOutputStream dos = new DeflaterOutputStream(res);
+        try {
+            dos.write(raw);
+            dos.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return res.toByteArray();
+    }
+
+    /**
+     * Decompress chunk data stored with the given compression type.
+     */
+    static byte[] inflate(byte[] compressed, byte compression) throws IOException {
+        ByteArrayOutputStream res = new ByteArrayOutputStream(8096);
+        switch (compression) {
+        case COMPRESSION_ZLIB:
+            try (OutputStream ios = new InflaterOutputStream(res)) {
+                ios.write(compressed);
+            }
+            break;
+        case COMPRESSION_GZIP:
+            try (GZIPInputStream gis = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                byte[] buf = new byte[8096];
+                int n;
+                while ((n = gis.read(buf)) != -1) {
+                    res.write(buf, 0, n);
+                }
+            }
+            break;
+        default:
+            throw new IOException("Unknown chunk compression type " + compression);
+        }
+        return res.toByteArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,84 @@
+package at.yawk.columbus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import lombok.Getter;
+import org.apache.mahout.math.map.AbstractLongObjectMap;
+import org.apache.mahout.math.map.OpenLongObjectHashMap;
+
+/**
+ * A folder of region files (region, DIM-1, ...) that single chunks can be read from and written to. Region files are
+ * opened on first use and kept open until this folder is closed.
+ */
+public class RegionFolder implements Closeable {
+    /**
+     * The directory containing the region files.
+     */
+    @Getter private final Path directory;
+    private final AbstractLongObjectMap<RegionFile> openRegions = new OpenLongObjectHashMap<>();
+
+    public RegionFolder(Path directory) {
+        assert directory != null;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the region file with the given coordinates, opening it if necessary. Coordinates are in region files = 32
+     * chunks = 512 blocks.
+     *
+     * @param create whether the file should be created if it does not exist yet.
+     * @return the region or null if it does not exist and create is false.
+     */
+    public synchronized RegionFile getRegion(int x, int z, boolean create) throws IOException {
+        long index = (z & 0xffffffffL) << 32L | x & 0xffffffffL;
+        RegionFile region = this.openRegions.get(index);
+        if (region == null) {
+            Path path = this.getDirectory().resolve("r." + x + "." + z + ".mca");
+            if (!create && !Files.isRegularFile(path)) {
+                return null;
+            }
+            if (create) {
+                Files.createDirectories(this.getDirectory());
+            }
+            region = RegionFile.open(path, true);
+            this.openRegions.put(index, region);
+        }
+        return region;
+    }
+
+    /**
+     * Read a single chunk for the given world. The chunk is <i>not</i> added to the world. Coordinates in 16 blocks.
+     *
+     * @return the chunk or null if it was never saved.
+     */
+    public Chunk readChunk(World world, int x, int z) throws IOException {
+        RegionFile region = this.getRegion(x >> 5, z >> 5, false);
+        return region == null ? null : region.readChunk(world, x, z);
+    }
+
+    /**
+     * Write a single chunk to its region file.
+     */
+    public void writeChunk(Chunk chunk) throws IOException {
+        this.getRegion(chunk.getChunkX() >> 5, chunk.getChunkZ() >> 5, true).writeChunk(chunk);
+    }
+
+    /**
+     * Close all open region files.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        IOException failure = null;
+        for (RegionFile region : this.openRegions.values()) {
+            try {
+                region.close();
+            } catch (IOException e) {
+                if (failure == null) { failure = e; }
+            }
+        }
+        this.openRegions.clear();
+        if (failure != null) { throw failure; }
+    }
+}
@@ -0,0 +1,72 @@
+package at.yawk.columbus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.apache.mahout.math.map.AbstractLongObjectMap;
+import org.apache.mahout.math.map.OpenLongObjectHashMap;
+
+/**
+ * Lights chunks in parallel, producing the same light as {@link LightEngine#relight(java.util.Collection)}.
+ * <p/>
+ * Chunks are grouped into square tiles. Spreading light from the chunks of a tile writes into the tile and a halo of
+ * one chunk around it, so two tiles whose coordinates are both even (or both odd) in x and in z never write the same
+ * chunk as long as tiles are at least two chunks wide. Tiles are thus lit in four passes, one for each parity class,
+ * with all tiles of a pass running concurrently. Light crossing the seam into a neighbouring tile is written by the
+ * halo of one pass and merged with the light of the neighbour in its own pass. Since light spreads to the maximum of
+ * all sources, the result does not depend on the order of the passes.
+ */
+final class TiledLightScheduler {
+    private final World world;
+    private final LighterTable lighter;
+    private final LightEngine.ChunkSource chunks;
+    private final int tileSize;
+
+    TiledLightScheduler(World world, LighterTable lighter, LightEngine.ChunkSource chunks, int tileSize) {
+        assert tileSize >= 2 : tileSize;
+        this.world = world;
+        this.lighter = lighter;
+        this.chunks = chunks;
+        this.tileSize = tileSize;
+    }
+
+    void relight(Collection<Chunk> chunks, ForkJoinPool pool) {
+        List<List<Chunk>> tiles = new ArrayList<>();
+        List<List<List<Chunk>>> passes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            passes.add(new ArrayList<>());
+        }
+
+        AbstractLongObjectMap<List<Chunk>> tilesByKey = new OpenLongObjectHashMap<>();
+        for (Chunk chunk : chunks) {
+            int tileX = Math.floorDiv(chunk.getChunkX(), this.tileSize);
+            int tileZ = Math.floorDiv(chunk.getChunkZ(), this.tileSize);
+            long key = (tileZ & 0xffffffffL) << 32L | tileX & 0xffffffffL;
+            List<Chunk> tile = tilesByKey.get(key);
+            if (tile == null) {
+                tile = new ArrayList<>();
+                tilesByKey.put(key, tile);
+                tiles.add(tile);
+                passes.get((tileX & 1) << 1 | tileZ & 1).add(tile);
+            }
+            tile.add(chunk);
+        }
+
+        // every chunk has to be reset before light from any neighbour spreads into it
+        pool.submit(() -> tiles.parallelStream().forEach(tile -> {
+            LightEngine engine = this.createEngine();
+            tile.forEach(engine::resetLight);
+        })).join();
+        for (List<List<Chunk>> pass : passes) {
+            pool.submit(() -> pass.parallelStream().forEach(tile -> {
+                LightEngine engine = this.createEngine();
+                tile.forEach(engine::spreadLight);
+            })).join();
+        }
+    }
+
+    private LightEngine createEngine() {
+        return new LightEngine(this.world, this.lighter, this.chunks);
+    }
+}
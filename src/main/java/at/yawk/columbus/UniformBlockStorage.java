@@ -0,0 +1,43 @@
+package at.yawk.columbus;
+
+/**
+ * Immutable block storage of a section that consists of a single block state. Setting a different state returns a
+ * {@link PalettedBlockStorage} copy.
+ */
+final class UniformBlockStorage extends BlockStorage {
+    /**
+     * Storage of air sections, shared by all of them.
+     */
+    static final UniformBlockStorage AIR = new UniformBlockStorage(0);
+
+    private final int state;
+
+    private UniformBlockStorage(int state) {
+        this.state = state;
+    }
+
+    static UniformBlockStorage of(int state) {
+        return state == 0 ? AIR : new UniformBlockStorage(state);
+    }
+
+    @Override
+    int get(int index) {
+        return this.state;
+    }
+
+    @Override
+    BlockStorage set(int index, int state) {
+        if (state == this.state) { return this; }
+        return new PalettedBlockStorage(this.state).set(index, state);
+    }
+
+    @Override
+    boolean isEmpty() {
+        return this.state >> 4 == 0;
+    }
+
+    @Override
+    boolean hasAdd() {
+        return this.state >> 12 != 0;
+    }
+}
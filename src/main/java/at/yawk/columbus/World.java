@@ -1,68 +1,236 @@
 package at.yawk.columbus;
 
 import at.yawk.columbus.nbt.NBT;
-import java.io.ByteArrayOutputStream;
+import com.google.common.base.Throwables;
+import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterOutputStream;
-import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import org.apache.mahout.math.list.IntArrayList;
 import org.apache.mahout.math.map.AbstractLongObjectMap;
 import org.apache.mahout.math.map.OpenLongObjectHashMap;
 
 /**
  * A world (dimension).
+ * <p/>
+ * A world either holds all of its chunks in memory or, if it was created with a {@link RegionFolder}, loads chunks
+ * lazily from that folder on first access. Lazy worlds keep at most a fixed amount of chunks resident and write evicted
+ * chunks back to their region file if they were modified. Chunk references obtained from a lazy world should not be
+ * kept across accesses to other chunks since the chunk may be evicted and loaded again as a different object.
  */
-@RequiredArgsConstructor
-public final class World {
+public final class World implements Closeable {
     /**
      * Properties of this world
      */
     @Getter @NonNull private final WorldProperties properties;
     /**
-     * All chunks in this world
+     * All chunks in this world grouped by region, or all resident chunks if this world is lazy. Reads do not lock, in
+     * lazy worlds changes are additionally made while holding the monitor of this world to keep the cache consistent.
      */
-    @Getter(AccessLevel.PRIVATE) private final AbstractLongObjectMap<Chunk> chunks = new OpenLongObjectHashMap<>();
+    private final ConcurrentLongObjectMap<Region> regions = new ConcurrentLongObjectMap<>();
+    /**
+     * The folder chunks are loaded from and written back to, or null if this world is held in memory entirely.
+     */
+    @Getter private final RegionFolder storage;
+    /**
+     * Access order of resident chunks, null if this world is not lazy.
+     */
+    private final ChunkCache cache;
+    /**
+     * First failure to write back an evicted chunk since the last flush, guarded by the monitor of this world.
+     */
+    private IOException evictionFailure;
+    /**
+     * Blocks changed since the last light update, as chunk-relative indices per chunk index. Null if changes are not
+     * being tracked.
+     */
+    private volatile AbstractLongObjectMap<IntArrayList> pendingLightUpdates = null;
+
+    public World(@NonNull WorldProperties properties) {
+        this.properties = properties;
+        this.storage = null;
+        this.cache = null;
+    }
 
     /**
-     * Returns a chunk or creates an empty one if necessary.
+     * Create a lazy world.
+     *
+     * @param storage          The folder to load chunks from and write modified chunks back to.
+     * @param maxLoadedChunks  The maximum amount of chunks held in memory at once.
+     */
+    public World(@NonNull WorldProperties properties, @NonNull RegionFolder storage, int maxLoadedChunks) {
+        this.properties = properties;
+        this.storage = storage;
+        this.cache = new ChunkCache(maxLoadedChunks, this::evict);
+    }
+
+    /**
+     * Returns a chunk or creates an empty one if necessary. Safe to call concurrently, at most one chunk is created
+     * per position.
      * <p/>
      * Coordinates in 16 blocks.
      */
-    public synchronized Chunk getChunkOrCreate(int x, int z) {
-        long index = getIndex(x, z);
-        Chunk result;
-        if (this.getChunks().containsKey(index)) {
-            result = this.getChunks().get(index);
-        } else {
+    public Chunk getChunkOrCreate(int x, int z) {
+        if (this.cache == null) {
+            return this.regions.computeIfAbsent(getIndex(x >> 5, z >> 5), index -> new Region(x >> 5, z >> 5))
+                               .getChunkOrCreate(x, z, () -> new Chunk(this, x, z));
+        }
+        synchronized (this) {
+            return this.getLazyChunkOrCreate(x, z);
+        }
+    }
+
+    private Chunk getLazyChunkOrCreate(int x, int z) {
+        Chunk result = this.getLazyChunk(x, z);
+        if (result == null) {
             result = new Chunk(this, x, z);
-            this.getChunks().put(index, result);
+            this.addChunk(result);
         }
         return result;
     }
 
     /**
-     * Returns a chunk or null if no chunk exists at the location.
+     * Returns a chunk or null if no chunk exists at the location. Lazy worlds load the chunk from their region folder
+     * if it is not resident. Does not lock unless this world is lazy.
      * <p/>
      * Coordinates in 16 blocks.
      */
-    public synchronized Chunk getChunkIfExists(int x, int z) {
-        long index = getIndex(x, z);
-        Chunk result = null;
-        if (this.getChunks().containsKey(index)) {
-            result = this.getChunks().get(index);
+    public Chunk getChunkIfExists(int x, int z) {
+        if (this.cache == null) {
+            return this.getResidentChunk(x, z);
+        }
+        synchronized (this) {
+            return this.getLazyChunk(x, z);
+        }
+    }
+
+    /**
+     * Returns a chunk if it is held in memory, without loading it or locking.
+     */
+    Chunk getResidentChunk(int x, int z) {
+        Region region = this.regions.get(getIndex(x >> 5, z >> 5));
+        return region == null ? null : region.getChunk(x, z);
+    }
+
+    private Chunk getLazyChunk(int x, int z) {
+        Chunk result = this.getResidentChunk(x, z);
+        if (result != null) {
+            this.cache.get(getIndex(x, z)); // mark as recently used
+        } else {
+            try {
+                result = this.getStorage().readChunk(this, x, z);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            if (result != null) {
+                this.addChunk(result);
+            }
         }
         return result;
     }
 
+    /**
+     * Insert a chunk, evicting the least recently used chunk if this world is lazy and full.
+     */
+    private void addChunk(Chunk chunk) {
+        int regionX = chunk.getChunkX() >> 5;
+        int regionZ = chunk.getChunkZ() >> 5;
+        if (this.cache == null) {
+            this.regions.computeIfAbsent(getIndex(regionX, regionZ), index -> new Region(regionX, regionZ))
+                        .putChunk(chunk);
+            return;
+        }
+        synchronized (this) {
+            this.regions.computeIfAbsent(getIndex(regionX, regionZ), index -> new Region(regionX, regionZ))
+                        .putChunk(chunk);
+            this.cache.put(getIndex(chunk.getChunkX(), chunk.getChunkZ()), chunk);
+        }
+    }
+
+    /**
+     * Called by the cache when a chunk is pushed out, always while holding the monitor of this world. A modified chunk
+     * is written back before it is removed. If that fails, it stays resident and the failure is thrown by the next
+     * {@link #flush()}.
+     *
+     * @return whether the chunk was removed.
+     */
+    private boolean evict(Chunk chunk) {
+        if (chunk.isDirty()) {
+            try {
+                this.getStorage().writeChunk(chunk);
+            } catch (IOException e) {
+                if (this.evictionFailure == null) { this.evictionFailure = e; }
+                return false;
+            }
+            chunk.clearDirty();
+        }
+        long regionIndex = getIndex(chunk.getChunkX() >> 5, chunk.getChunkZ() >> 5);
+        Region region = this.regions.get(regionIndex);
+        region.removeChunk(chunk.getChunkX(), chunk.getChunkZ());
+        // only lazy worlds remove chunks, and they only insert while holding the monitor
+        if (region.isEmpty()) { this.regions.remove(regionIndex); }
+        return true;
+    }
+
+    /**
+     * Write all modified resident chunks back to the region folder. Does nothing if this world is not lazy.
+     *
+     * @throws java.io.IOException if a chunk could not be written, now or when it was evicted earlier.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.getStorage() == null) { return; }
+        for (Chunk chunk : this.getAllChunks()) {
+            if (chunk.isDirty()) {
+                this.getStorage().writeChunk(chunk);
+                chunk.clearDirty();
+            }
+        }
+        IOException failure = this.evictionFailure;
+        if (failure != null) {
+            this.evictionFailure = null;
+            throw failure;
+        }
+    }
+
+    /**
+     * Flush and close the region folder of this world if it is lazy.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.getStorage() == null) { return; }
+        this.flush();
+        this.getStorage().close();
+    }
+
+    /**
+     * Wait for a chunk task, rethrowing its exception unwrapped. IOExceptions of the task are expected to be wrapped in
+     * an UncheckedIOException.
+     */
+    private static <T> T join(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw Throwables.propagate(cause);
+        }
+    }
+
     private static long getIndex(int x, int z) {
         return (z & 0xffffffffL) << 32L | x & 0xffffffffL;
     }
@@ -75,26 +243,44 @@ public final class World {
      * Writes the region file with the given coordinates. Coordinates are in region files = 32 chunks = 512 blocks.
      */
     public void writeRegionFile(int x, int z, DataOutput output) throws IOException {
+        this.writeRegionFile(x, z, output, Runnable::run);
+    }
+
+    /**
+     * Writes the region file with the given coordinates, serializing and compressing its chunks on the given executor.
+     * The output is the same as that of {@link #writeRegionFile(int, int, java.io.DataOutput)}. Coordinates are in
+     * region files = 32 chunks = 512 blocks.
+     */
+    public void writeRegionFile(int x, int z, DataOutput output, Executor executor) throws IOException {
+        Region region = this.getRegion(x, z);
         // collect chunk data
         ChunkData[] data = new ChunkData[32 * 32];
-        int usedSectors = 2;
         for (int coz = 0; coz < 32; coz++) {
             for (int cox = 0; cox < 32; cox++) {
-                Chunk chunk = this.getChunkIfExists(x * 32 | cox, z * 32 | coz);
+                // lazy worlds load chunks that are not resident
+                Chunk chunk = this.cache != null ? this.getChunkIfExists(x * 32 | cox, z * 32 | coz) :
+                              region == null ? null : region.getChunk(cox, coz);
                 if (chunk == null) {
                     continue;
                 }
-                byte[] rdata = NBT.serializeArray(chunk.serialize());
                 ChunkData cdata = new ChunkData();
                 cdata.chunk = chunk;
-                cdata.rawData = rdata;
-                cdata.compressedData = cdata.compress();
-                cdata.sector = usedSectors;
-                cdata.sectorCount = (cdata.compressedData.length + 5 >> 12) + 1;
-                usedSectors += cdata.sectorCount;
+                cdata.compressing = CompletableFuture.supplyAsync(() -> RegionFile.deflate(chunk.serializeArray()),
+                                                                  executor);
                 data[getRegionIndex(cox, coz)] = cdata;
             }
         }
+        // assign sectors in order
+        int usedSectors = 2;
+        for (ChunkData cdata : data) {
+            if (cdata == null) {
+                continue;
+            }
+            cdata.compressedData = join(cdata.compressing);
+            cdata.sector = usedSectors;
+            cdata.sectorCount = (cdata.compressedData.length + 5 >> 12) + 1;
+            usedSectors += cdata.sectorCount;
+        }
         for (int i = 0; i < 32 * 32; i++) {
             if (data[i] == null) {
                 output.write(new byte[4]);
@@ -120,6 +306,14 @@ public final class World {
      * Reads the region file with the given coordinates. Coordinates are in region files = 32 chunks = 512 blocks.
      */
     public void readRegionFile(int x, int z, DataInput input) throws IOException {
+        this.readRegionFile(x, z, input, Runnable::run);
+    }
+
+    /**
+     * Reads the region file with the given coordinates, inflating and deserializing its chunks on the given executor
+     * while the input is still being read. Coordinates are in region files = 32 chunks = 512 blocks.
+     */
+    public void readRegionFile(int x, int z, DataInput input, Executor executor) throws IOException {
         ChunkData[] chunkArray = new ChunkData[32 * 32];
         for (int i = 0; i < 32 * 32; i++) {
             int id = input.readInt();
@@ -142,44 +336,220 @@ public final class World {
                                        .filter(d -> d != null)
                                        .sorted(Comparator.comparingInt(d -> d.sector))
                                        .collect(Collectors.toList());
+        // read the compressed payloads in file order and hand them off for decoding
         int sector = 2;
         for (ChunkData data : sorted) {
             // skip to sector
             for (; sector < data.sector; sector++) { input.skipBytes(0x1000); }
             data.compressedData = new byte[input.readInt() - 1];
-            input.readByte(); // version
+            data.compression = input.readByte();
             input.readFully(data.compressedData);
             input.skipBytes((data.sectorCount << 12) - 5 - data.compressedData.length);
-            data.rawData = data.decompress();
-            data.chunk = Chunk.deserialize(this, NBT.deserializeArray(data.rawData));
-            chunks.put(getIndex(data.x, data.z), data.chunk);
+            data.decoding = CompletableFuture.supplyAsync(() -> {
+                data.rawData = data.decompress();
+                try {
+                    return Chunk.deserialize(this, NBT.deserialize(ByteBuffer.wrap(data.rawData), Chunk.LAZY_LISTS));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
             sector += data.sectorCount;
         }
+        for (ChunkData data : sorted) {
+            data.chunk = join(data.decoding);
+            this.addChunk(data.chunk);
+        }
+    }
+
+    /**
+     * Reads all chunks of the given region file into this world.
+     */
+    public void readRegionFile(RegionFile region) throws IOException {
+        this.readRegionFile(region, Runnable::run);
+    }
+
+    /**
+     * Reads all chunks of the given region file into this world, inflating and deserializing them on the given
+     * executor.
+     */
+    public void readRegionFile(RegionFile region, Executor executor) throws IOException {
+        List<CompletableFuture<Chunk>> decoding = new ArrayList<>();
+        for (int coz = 0; coz < 32; coz++) {
+            for (int cox = 0; cox < 32; cox++) {
+                if (!region.hasChunk(cox, coz)) { continue; }
+                int chunkX = cox;
+                int chunkZ = coz;
+                decoding.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return region.readChunk(this, chunkX, chunkZ);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+        }
+        for (CompletableFuture<Chunk> future : decoding) {
+            this.addChunk(join(future));
+        }
+    }
+
+    /**
+     * Reads a single chunk from the given region file and adds it to this world, replacing any chunk loaded at the same
+     * position. Only that chunk is inflated and deserialized.
+     * <p/>
+     * Coordinates in 16 blocks, relative to the region or to the world.
+     *
+     * @return the chunk or null if the region file does not contain it.
+     */
+    public Chunk readChunk(RegionFile region, int x, int z) throws IOException {
+        Chunk chunk = region.readChunk(this, x, z);
+        if (chunk != null) {
+            this.addChunk(chunk);
+        }
+        return chunk;
     }
 
     /**
      * Refresh the height map of this world using the given lighter.
      */
     public synchronized void refreshHeightMap(Lighter lighter) {
-        for (Chunk chunk : this.getAllChunks()) {
-            chunk.calculateHeightMap(lighter);
+        LighterTable table = lighter.freeze();
+        this.getAllChunks().parallelStream().forEach(chunk -> chunk.calculateHeightMap(table));
+    }
+
+    /**
+     * Recalculate block light and sky light of all loaded chunks. Sky light is seeded from the height maps, which
+     * should be refreshed with {@link #refreshHeightMap(Lighter)} first if blocks were changed. Lazy worlds only light
+     * their resident chunks and do not load neighbours.
+     */
+    public synchronized void relight(Lighter lighter) {
+        new LightEngine(this, lighter.freeze()).relight(this.getAllChunks());
+    }
+
+    /**
+     * Recalculate block light and sky light of all loaded chunks like {@link #relight(Lighter)}, lighting tiles of 4x4
+     * chunks concurrently on the given pool.
+     */
+    public void relight(Lighter lighter, ForkJoinPool pool) {
+        this.relight(lighter, pool, 4);
+    }
+
+    /**
+     * Recalculate block light and sky light of all loaded chunks like {@link #relight(Lighter)}, lighting tiles of
+     * chunks concurrently on the given pool. The result is the same as that of the serial method, which for lazy worlds
+     * likewise only lights resident chunks without loading neighbours. The world must not be modified until this
+     * method returns.
+     *
+     * @param tileSize the width of the tiles in chunks, at least 2.
+     */
+    public void relight(Lighter lighter, ForkJoinPool pool, int tileSize) {
+        if (tileSize < 2) {
+            throw new IllegalArgumentException("Tiles must be at least 2 chunks wide");
         }
+        new TiledLightScheduler(this, lighter.freeze(), this::getResidentChunk, tileSize)
+                .relight(this.getAllChunks(), pool);
+    }
+
+    /**
+     * Enable or disable incremental light updates. While enabled, every block set through
+     * {@link ChunkSection#setBlock(int, int, int, short, byte)} is remembered until the next call to
+     * {@link #flushLightUpdates(Lighter)}. Disabling discards all pending updates.
+     */
+    public synchronized void setTrackLightUpdates(boolean track) {
+        if (track == (this.pendingLightUpdates != null)) { return; }
+        this.pendingLightUpdates = track ? new OpenLongObjectHashMap<>() : null;
+    }
+
+    public boolean isTrackLightUpdates() {
+        return this.pendingLightUpdates != null;
+    }
+
+    /**
+     * Remember a changed block for the next light update if light updates are tracked.
+     *
+     * @param index the chunk-relative block index (y << 8 | z << 4 | x).
+     */
+    void queueLightUpdate(Chunk chunk, int index) {
+        this.queueLightUpdates(chunk, index, 1);
+    }
+
+    /**
+     * Remember a range of changed blocks for the next light update if light updates are tracked.
+     *
+     * @param from  the chunk-relative index of the first changed block.
+     * @param count the number of consecutive changed blocks.
+     */
+    void queueLightUpdates(Chunk chunk, int from, int count) {
+        if (this.pendingLightUpdates == null) { return; }
+        synchronized (this) {
+            AbstractLongObjectMap<IntArrayList> pending = this.pendingLightUpdates;
+            if (pending == null) { return; }
+            long key = getIndex(chunk.getChunkX(), chunk.getChunkZ());
+            IntArrayList changed = pending.get(key);
+            if (changed == null) {
+                changed = new IntArrayList();
+                pending.put(key, changed);
+            }
+            for (int index = from; index < from + count; index++) {
+                changed.add(index);
+            }
+        }
+    }
+
+    /**
+     * Update the height map and the light around all blocks changed since light updates were enabled or last flushed.
+     * The light of all other blocks is assumed to be correct, for example after a call to {@link #relight(Lighter)}.
+     * Lazy worlds only update their resident chunks, changes in chunks that were evicted since are dropped.
+     */
+    public synchronized void flushLightUpdates(Lighter lighter) {
+        AbstractLongObjectMap<IntArrayList> pending = this.pendingLightUpdates;
+        if (pending == null || pending.isEmpty()) { return; }
+        this.pendingLightUpdates = new OpenLongObjectHashMap<>();
+
+        LightEngine engine = new LightEngine(this, lighter.freeze());
+        pending.forEachPair((key, changed) -> {
+            // loading chunks of a lazy world could evict chunks the engine is writing to
+            Chunk chunk = this.getResidentChunk((int) key, (int) (key >> 32));
+            if (chunk != null) {
+                changed.trimToSize();
+                engine.update(chunk, changed.elements());
+            }
+            return true;
+        });
     }
 
     /**
      * Fullbright this world (set skylight to 100% on all blocks).
      */
     public synchronized void fullbright() {
-        for (Chunk chunk : this.getAllChunks()) {
-            chunk.fullbright();
-        }
+        this.getAllChunks().parallelStream().forEach(Chunk::fullbright);
     }
 
     /**
-     * Returns a list of all loaded chunks.
+     * Returns a list of all loaded chunks. For lazy worlds, these are only the chunks currently held in memory.
      */
     public List<Chunk> getAllChunks() {
-        return this.getChunks().values();
+        List<Chunk> chunks = new ArrayList<>();
+        for (Region region : this.regions.values()) {
+            chunks.addAll(region.getChunks());
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the region with the given coordinates or null if it has no loaded chunks. Coordinates are in region
+     * files = 32 chunks = 512 blocks.
+     */
+    public Region getRegion(int x, int z) {
+        return this.regions.get(getIndex(x, z));
+    }
+
+    /**
+     * Returns a list of all regions with loaded chunks. For lazy worlds, these are only the regions with chunks
+     * currently held in memory.
+     */
+    public List<Region> getRegions() {
+        return this.regions.values();
     }
 
     private static class ChunkData {
@@ -188,32 +558,19 @@ public final class World {
         int sectorCount;
         byte[] rawData;
         byte[] compressedData;
+        byte compression = RegionFile.COMPRESSION_ZLIB;
+        CompletableFuture<byte[]> compressing;
+        CompletableFuture<Chunk> decoding;
         int x;
         int z;
         long lastUpdated;
 
-        private byte[] compress() {
-            ByteArrayOutputStream res = new ByteArrayOutputStream(8096);
-            DeflaterOutputStream dos = new DeflaterOutputStream(res);
-            try {
-                dos.write(this.rawData);
-                dos.finish();
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-            return res.toByteArray();
-        }
-
         private byte[] decompress() {
-            ByteArrayOutputStream res = new ByteArrayOutputStream(8096);
-            InflaterOutputStream ios = new InflaterOutputStream(res);
             try {
-                ios.write(this.compressedData);
-                ios.finish();
+                return RegionFile.inflate(this.compressedData, this.compression);
             } catch (IOException e) {
-                throw new RuntimeException(e);
+                throw new UncheckedIOException(e);
             }
-            return res.toByteArray();
         }
     }
 }
@@ -0,0 +1,114 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Big-endian bulk reads and writes of numeric arrays. ByteBuffer inputs and outputs are read and written directly,
+ * other inputs and outputs go through a temporary byte array.
+ */
+final class BulkIo {
+    private BulkIo() {}
+
+    static void readShorts(DataInput input, short[] values, int length) throws IOException {
+        if (input instanceof ByteBufferDataInput) {
+            ((ByteBufferDataInput) input).readShorts(values, length);
+        } else {
+            byte[] buf = new byte[length << 1];
+            input.readFully(buf);
+            ByteBuffer.wrap(buf).asShortBuffer().get(values, 0, length);
+        }
+    }
+
+    static void writeShorts(DataOutput output, short[] values, int length) throws IOException {
+        if (output instanceof ByteBufferDataOutput) {
+            ((ByteBufferDataOutput) output).writeShorts(values, length);
+        } else {
+            byte[] buf = new byte[length << 1];
+            ByteBuffer.wrap(buf).asShortBuffer().put(values, 0, length);
+            output.write(buf);
+        }
+    }
+
+    static void readInts(DataInput input, int[] values, int length) throws IOException {
+        if (input instanceof ByteBufferDataInput) {
+            ((ByteBufferDataInput) input).readInts(values, length);
+        } else {
+            byte[] buf = new byte[length << 2];
+            input.readFully(buf);
+            ByteBuffer.wrap(buf).asIntBuffer().get(values, 0, length);
+        }
+    }
+
+    static void writeInts(DataOutput output, int[] values, int length) throws IOException {
+        if (output instanceof ByteBufferDataOutput) {
+            ((ByteBufferDataOutput) output).writeInts(values, length);
+        } else {
+            byte[] buf = new byte[length << 2];
+            ByteBuffer.wrap(buf).asIntBuffer().put(values, 0, length);
+            output.write(buf);
+        }
+    }
+
+    static void readLongs(DataInput input, long[] values, int length) throws IOException {
+        if (input instanceof ByteBufferDataInput) {
+            ((ByteBufferDataInput) input).readLongs(values, length);
+        } else {
+            byte[] buf = new byte[length << 3];
+            input.readFully(buf);
+            ByteBuffer.wrap(buf).asLongBuffer().get(values, 0, length);
+        }
+    }
+
+    static void writeLongs(DataOutput output, long[] values, int length) throws IOException {
+        if (output instanceof ByteBufferDataOutput) {
+            ((ByteBufferDataOutput) output).writeLongs(values, length);
+        } else {
+            byte[] buf = new byte[length << 3];
+            ByteBuffer.wrap(buf).asLongBuffer().put(values, 0, length);
+            output.write(buf);
+        }
+    }
+
+    static void readFloats(DataInput input, float[] values, int length) throws IOException {
+        if (input instanceof ByteBufferDataInput) {
+            ((ByteBufferDataInput) input).readFloats(values, length);
+        } else {
+            byte[] buf = new byte[length << 2];
+            input.readFully(buf);
+            ByteBuffer.wrap(buf).asFloatBuffer().get(values, 0, length);
+        }
+    }
+
+    static void writeFloats(DataOutput output, float[] values, int length) throws IOException {
+        if (output instanceof ByteBufferDataOutput) {
+            ((ByteBufferDataOutput) output).writeFloats(values, length);
+        } else {
+            byte[] buf = new byte[length << 2];
+            ByteBuffer.wrap(buf).asFloatBuffer().put(values, 0, length);
+            output.write(buf);
+        }
+    }
+
+    static void readDoubles(DataInput input, double[] values, int length) throws IOException {
+        if (input instanceof ByteBufferDataInput) {
+            ((ByteBufferDataInput) input).readDoubles(values, length);
+        } else {
+            byte[] buf = new byte[length << 3];
+            input.readFully(buf);
+            ByteBuffer.wrap(buf).asDoubleBuffer().get(values, 0, length);
+        }
+    }
+
+    static void writeDoubles(DataOutput output, double[] values, int length) throws IOException {
+        if (output instanceof ByteBufferDataOutput) {
+            ((ByteBufferDataOutput) output).writeDoubles(values, length);
+        } else {
+            byte[] buf = new byte[length << 3];
+            ByteBuffer.wrap(buf).asDoubleBuffer().put(values, 0, length);
+            output.write(buf);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * DataInput that reads big-endian values from a heap or direct ByteBuffer.
+ * <p/>
+ * Reads start at the position of the buffer when this input was created and do not move the position of that buffer,
+ * use {@link #position()} to find out how much was read. Numeric arrays and lists are decoded in bulk straight from the
+ * buffer.
+ */
+public final class ByteBufferDataInput implements DataInput {
+    private final ByteBuffer buffer;
+    /**
+     * Names of compound entries whose list values are read as {@link TagLazyList}.
+     */
+    private final Set<String> lazyLists;
+
+    public ByteBufferDataInput(ByteBuffer buffer) {
+        this(buffer, Collections.emptySet());
+    }
+
+    /**
+     * @param lazyLists names of compound entries whose list values are kept undecoded until they are accessed.
+     */
+    public ByteBufferDataInput(ByteBuffer buffer, Set<String> lazyLists) {
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.lazyLists = lazyLists;
+    }
+
+    /**
+     * Returns the position in the buffer of the next byte to be read.
+     */
+    public int position() {
+        return this.buffer.position();
+    }
+
+    private void require(long length) throws EOFException {
+        if (this.buffer.remaining() < length) {
+            throw new EOFException("Needed " + length + " bytes but only " + this.buffer.remaining() + " remain");
+        }
+    }
+
+    /**
+     * Advance the position after a bulk read through a view buffer.
+     */
+    private void advance(int length) {
+        this.buffer.position(this.buffer.position() + length);
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+        this.readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        this.require(len);
+        this.buffer.get(b, off, len);
+    }
+
+    @Override
+    public int skipBytes(int n) {
+        int skipped = Math.max(0, Math.min(n, this.buffer.remaining()));
+        this.advance(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return this.readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        this.require(1);
+        return this.buffer.get();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return this.readByte() & 0xff;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        this.require(2);
+        return this.buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return this.readShort() & 0xffff;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        this.require(2);
+        return this.buffer.getChar();
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        this.require(4);
+        return this.buffer.getInt();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        this.require(8);
+        return this.buffer.getLong();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        this.require(4);
+        return this.buffer.getFloat();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        this.require(8);
+        return this.buffer.getDouble();
+    }
+
+    /**
+     * Not supported.
+     */
+    @Override
+    public String readLine() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        int start = this.buffer.position();
+        int length = this.readUnsignedShort();
+        this.require(length);
+        int offset = this.buffer.position();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            byte b = this.buffer.get(offset + i);
+            if (b <= 0) {
+                // not plain ASCII (0 is encoded in two bytes), let the JDK decode modified UTF-8
+                this.buffer.position(start);
+                return DataInputStream.readUTF(this);
+            }
+            chars[i] = (char) b;
+        }
+        this.advance(length);
+        return new String(chars);
+    }
+
+    /**
+     * Read a compound entry name, taking it from the given cache without decoding if possible.
+     */
+    String readKey(NbtKeyCache cache) throws IOException {
+        int start = this.buffer.position();
+        int length = this.readUnsignedShort();
+        this.require(length);
+        String key = cache.get(this.buffer, this.buffer.position(), length);
+        if (key != null) {
+            this.advance(length);
+            return key;
+        }
+        this.buffer.position(start);
+        return cache.intern(this.readUTF());
+    }
+
+    /**
+     * Returns whether list values of compound entries with the given name should be read lazily.
+     */
+    boolean isLazy(String name) {
+        return !this.lazyLists.isEmpty() && this.lazyLists.contains(name);
+    }
+
+    /**
+     * Read a list value without decoding its elements.
+     */
+    TagLazyList readLazyList() throws IOException {
+        int start = this.buffer.position();
+        NbtReader.skipPayload(this, TagType.LIST);
+        byte[] raw = new byte[this.buffer.position() - start];
+        this.buffer.position(start);
+        this.buffer.get(raw);
+        return new TagLazyList(raw);
+    }
+
+    void readShorts(short[] values, int length) throws IOException {
+        this.require((long) length << 1);
+        this.buffer.asShortBuffer().get(values, 0, length);
+        this.advance(length << 1);
+    }
+
+    void readInts(int[] values, int length) throws IOException {
+        this.require((long) length << 2);
+        this.buffer.asIntBuffer().get(values, 0, length);
+        this.advance(length << 2);
+    }
+
+    void readLongs(long[] values, int length) throws IOException {
+        this.require((long) length << 3);
+        this.buffer.asLongBuffer().get(values, 0, length);
+        this.advance(length << 3);
+    }
+
+    void readFloats(float[] values, int length) throws IOException {
+        this.require((long) length << 2);
+        this.buffer.asFloatBuffer().get(values, 0, length);
+        this.advance(length << 2);
+    }
+
+    void readDoubles(double[] values, int length) throws IOException {
+        this.require((long) length << 3);
+        this.buffer.asDoubleBuffer().get(values, 0, length);
+        this.advance(length << 3);
+    }
+}
@@ -0,0 +1,219 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataOutput;
+import java.io.UTFDataFormatException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * DataOutput that writes big-endian values to a ByteBuffer.
+ * <p/>
+ * The output either writes to a given buffer, starting at its position without moving it, and throws a
+ * {@link java.nio.BufferOverflowException} once that buffer is full, or it writes to a heap buffer of its own that
+ * grows as needed. Numeric arrays and lists are encoded in bulk straight into the buffer.
+ */
+public final class ByteBufferDataOutput implements DataOutput {
+    private ByteBuffer buffer;
+    private final boolean growable;
+
+    /**
+     * Write to the given buffer.
+     */
+    public ByteBufferDataOutput(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        this.growable = false;
+    }
+
+    /**
+     * Write to a growing heap buffer with the given initial capacity.
+     */
+    public ByteBufferDataOutput(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+        this.growable = true;
+    }
+
+    /**
+     * Returns the position in the buffer of the next byte to be written.
+     */
+    public int position() {
+        return this.buffer.position();
+    }
+
+    /**
+     * Returns a buffer containing the bytes written to an output with its own buffer, sharing its content.
+     */
+    public ByteBuffer toByteBuffer() {
+        assert this.growable;
+        ByteBuffer result = this.buffer.duplicate();
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Returns a copy of the bytes written to an output with its own buffer.
+     */
+    public byte[] toByteArray() {
+        assert this.growable;
+        return Arrays.copyOf(this.buffer.array(), this.buffer.position());
+    }
+
+    private void require(long length) {
+        if (this.buffer.remaining() >= length) { return; }
+        if (!this.growable) { throw new BufferOverflowException(); }
+        long needed = this.buffer.position() + length;
+        if (needed > Integer.MAX_VALUE - 8) { throw new OutOfMemoryError("Output too large: " + needed); }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, this.buffer.capacity() * 2L));
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        this.buffer.flip();
+        grown.put(this.buffer);
+        this.buffer = grown;
+    }
+
+    /**
+     * Advance the position after a bulk write through a view buffer.
+     */
+    private void advance(int length) {
+        this.buffer.position(this.buffer.position() + length);
+    }
+
+    @Override
+    public void write(int b) {
+        this.require(1);
+        this.buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b) {
+        this.write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        this.require(len);
+        this.buffer.put(b, off, len);
+    }
+
+    @Override
+    public void writeBoolean(boolean v) {
+        this.write(v ? 1 : 0);
+    }
+
+    @Override
+    public void writeByte(int v) {
+        this.write(v);
+    }
+
+    @Override
+    public void writeShort(int v) {
+        this.require(2);
+        this.buffer.putShort((short) v);
+    }
+
+    @Override
+    public void writeChar(int v) {
+        this.require(2);
+        this.buffer.putChar((char) v);
+    }
+
+    @Override
+    public void writeInt(int v) {
+        this.require(4);
+        this.buffer.putInt(v);
+    }
+
+    @Override
+    public void writeLong(long v) {
+        this.require(8);
+        this.buffer.putLong(v);
+    }
+
+    @Override
+    public void writeFloat(float v) {
+        this.require(4);
+        this.buffer.putFloat(v);
+    }
+
+    @Override
+    public void writeDouble(double v) {
+        this.require(8);
+        this.buffer.putDouble(v);
+    }
+
+    @Override
+    public void writeBytes(String s) {
+        this.require(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            this.buffer.put((byte) s.charAt(i));
+        }
+    }
+
+    @Override
+    public void writeChars(String s) {
+        this.require(s.length() * 2L);
+        for (int i = 0; i < s.length(); i++) {
+            this.buffer.putChar(s.charAt(i));
+        }
+    }
+
+    /**
+     * Write a string in modified UTF-8, like {@link java.io.DataOutputStream#writeUTF(String)}.
+     */
+    @Override
+    public void writeUTF(String s) throws UTFDataFormatException {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            length += c >= 1 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        if (length > 0xffff) {
+            throw new UTFDataFormatException("String too long: " + length + " bytes");
+        }
+        this.require(2 + length);
+        this.buffer.putShort((short) length);
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 1 && c < 0x80) {
+                this.buffer.put((byte) c);
+            } else if (c < 0x800) {
+                this.buffer.put((byte) (0xc0 | c >> 6));
+                this.buffer.put((byte) (0x80 | c & 0x3f));
+            } else {
+                this.buffer.put((byte) (0xe0 | c >> 12));
+                this.buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+                this.buffer.put((byte) (0x80 | c & 0x3f));
+            }
+        }
+    }
+
+    void writeShorts(short[] values, int length) {
+        this.require((long) length << 1);
+        this.buffer.asShortBuffer().put(values, 0, length);
+        this.advance(length << 1);
+    }
+
+    void writeInts(int[] values, int length) {
+        this.require((long) length << 2);
+        this.buffer.asIntBuffer().put(values, 0, length);
+        this.advance(length << 2);
+    }
+
+    void writeLongs(long[] values, int length) {
+        this.require((long) length << 3);
+        this.buffer.asLongBuffer().put(values, 0, length);
+        this.advance(length << 3);
+    }
+
+    void writeFloats(float[] values, int length) {
+        this.require((long) length << 2);
+        this.buffer.asFloatBuffer().put(values, 0, length);
+        this.advance(length << 2);
+    }
+
+    void writeDoubles(double[] values, int length) {
+        this.require((long) length << 3);
+        this.buffer.asDoubleBuffer().put(values, 0, length);
+        this.advance(length << 3);
+    }
+}
@@ -1,7 +1,5 @@
 package at.yawk.columbus.nbt;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutput;
@@ -9,6 +7,9 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -20,16 +21,36 @@ import lombok.NoArgsConstructor;
  */
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class NBT {
+    /**
+     * Cache for compound entry names read by all deserialization methods, null to disable caching.
+     */
+    private static volatile NbtKeyCache keyCache = new NbtKeyCache(1024);
+
+    /**
+     * Returns the cache that names of compound entries are deduplicated with, or null if names are not cached.
+     */
+    public static NbtKeyCache getKeyCache() {
+        return keyCache;
+    }
+
+    /**
+     * Set the cache that names of compound entries are deduplicated with during deserialization. A single cache may be
+     * shared by all threads. Defaults to a cache of 1024 names.
+     *
+     * @param cache the cache or null to disable caching.
+     */
+    public static void setKeyCache(NbtKeyCache cache) {
+        keyCache = cache;
+    }
+
     /**
      * Read a NamedTag from the given DataInput.
      */
     public static NamedTag deserialize(DataInput input) throws IOException {
         byte typeId = input.readByte();
         TagType type = TagType.forId(typeId);
-        String name = input.readUTF();
-        Tag tag = type.newInstance();
-        tag.deserialize(input);
-        return new NamedTag(name, tag);
+        String name = NbtKeyCache.readKey(input);
+        return new NamedTag(name, type.read(input));
     }
 
     /**
@@ -41,6 +62,84 @@ public class NBT {
         tag.getValue().serialize(output);
     }
 
+    /**
+     * Read a NamedTag from the given buffer, starting at its position. The position is moved past the tag.
+     */
+    public static NamedTag deserialize(ByteBuffer buffer) throws IOException {
+        ByteBufferDataInput input = new ByteBufferDataInput(buffer);
+        NamedTag tag = deserialize(input);
+        buffer.position(input.position());
+        return tag;
+    }
+
+    /**
+     * Read a NamedTag from the given buffer like {@link #deserialize(java.nio.ByteBuffer)}, keeping list values of
+     * compound entries with one of the given names undecoded until they are accessed.
+     *
+     * @see TagLazyList
+     */
+    public static NamedTag deserialize(ByteBuffer buffer, Set<String> lazyLists) throws IOException {
+        ByteBufferDataInput input = new ByteBufferDataInput(buffer, lazyLists);
+        NamedTag tag = deserialize(input);
+        buffer.position(input.position());
+        return tag;
+    }
+
+    /**
+     * Read a single tag by path from a NamedTag without decoding anything else. The path uses the same names as
+     * {@link TagCompound#getTagDeep(String...)} on the root value.
+     * <p/>
+     * The input is left at an unspecified position inside the tag. Use a {@link NbtProjection} to read multiple tags at
+     * once.
+     *
+     * @return the tag or null if it does not exist.
+     */
+    public static Tag extract(DataInput input, String... path) throws IOException {
+        return find(new NbtProjection().add(path).read(input), path);
+    }
+
+    /**
+     * Read a single tag by path from a NamedTag in the given buffer, starting at its position. The position of the
+     * buffer is not changed.
+     *
+     * @see #extract(java.io.DataInput, String...)
+     */
+    public static Tag extract(ByteBuffer buffer, String... path) throws IOException {
+        return find(new NbtProjection().add(path).read(buffer), path);
+    }
+
+    private static Tag find(TagCompound compound, String[] path) {
+        Tag tag = compound;
+        for (String name : path) {
+            tag = tag.asCompound().getTagIfExists(name);
+            if (tag == null) { return null; }
+        }
+        return tag;
+    }
+
+    /**
+     * Write a NamedTag to the given buffer, starting at its position. The position is moved past the tag.
+     *
+     * @throws java.nio.BufferOverflowException if the tag does not fit into the remaining space of the buffer.
+     */
+    public static void serialize(ByteBuffer buffer, NamedTag tag) throws IOException {
+        ByteBufferDataOutput output = new ByteBufferDataOutput(buffer);
+        serialize(output, tag);
+        buffer.position(output.position());
+    }
+
+    /**
+     * Write a NamedTag to the given channel.
+     */
+    public static void serialize(WritableByteChannel channel, NamedTag tag) throws IOException {
+        ByteBufferDataOutput output = new ByteBufferDataOutput(0x1000);
+        serialize(output, tag);
+        ByteBuffer data = output.toByteBuffer();
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
     /**
      * Read a NamedTag from the given InputStream.
      */
@@ -75,16 +174,16 @@ public class NBT {
      * Read a NamedTag from the given array.
      */
     public static NamedTag deserializeArray(byte[] array) throws IOException {
-        return deserializeStream(new ByteArrayInputStream(array));
+        return deserialize(ByteBuffer.wrap(array));
     }
 
     /**
      * Write a NamedTag to an array.
      */
     public static byte[] serializeArray(NamedTag tag) {
-        ByteArrayOutputStream res = new ByteArrayOutputStream();
+        ByteBufferDataOutput res = new ByteBufferDataOutput(0x1000);
         try {
-            serializeStream(res, tag);
+            serialize(res, tag);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
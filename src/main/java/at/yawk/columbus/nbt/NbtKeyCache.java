@@ -0,0 +1,86 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Bounded cache of compound entry names, so that the same name read many times resolves to one shared String.
+ * <p/>
+ * The cache is a direct-mapped table of a fixed size, a name replaces whatever name occupied its slot before. Only
+ * short names consisting of ASCII characters other than NUL are cached, which covers practically all names used by
+ * Minecraft. Names read from a {@link ByteBufferDataInput} are compared against the cache on their raw bytes and not
+ * decoded at all if they are found.
+ * <p/>
+ * Instances are thread-safe without locking: slots hold immutable Strings, and a lost race only costs a cache miss.
+ *
+ * @see NBT#setKeyCache(NbtKeyCache)
+ */
+public final class NbtKeyCache {
+    /**
+     * Longer names are not cached.
+     */
+    static final int MAX_KEY_LENGTH = 64;
+
+    private final String[] keys;
+
+    /**
+     * @param capacity the amount of names the cache can hold, rounded up to a power of two.
+     */
+    public NbtKeyCache(int capacity) {
+        assert capacity > 0 && capacity <= 1 << 30 : capacity;
+        this.keys = new String[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+    }
+
+    /**
+     * Returns the cached instance of the given name, caching it if possible.
+     */
+    public String intern(String key) {
+        int length = key.length();
+        if (length > MAX_KEY_LENGTH) { return key; }
+        for (int i = 0; i < length; i++) {
+            char c = key.charAt(i);
+            if (c == 0 || c >= 0x80) { return key; }
+        }
+        int slot = this.slot(key.hashCode());
+        String cached = this.keys[slot];
+        if (key.equals(cached)) { return cached; }
+        this.keys[slot] = key;
+        return key;
+    }
+
+    /**
+     * Returns the cached name equal to the modified UTF-8 bytes in the given range of the buffer, or null if it is not
+     * cached.
+     */
+    String get(ByteBuffer buffer, int offset, int length) {
+        if (length > MAX_KEY_LENGTH) { return null; }
+        // String.hashCode of an ASCII string
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(offset + i);
+        }
+        String cached = this.keys[this.slot(hash)];
+        if (cached == null || cached.length() != length) { return null; }
+        for (int i = 0; i < length; i++) {
+            if (cached.charAt(i) != buffer.get(offset + i)) { return null; }
+        }
+        return cached;
+    }
+
+    private int slot(int hash) {
+        return (hash ^ hash >>> 16) & this.keys.length - 1;
+    }
+
+    /**
+     * Read a compound entry name using the cache configured in {@link NBT}.
+     */
+    static String readKey(DataInput input) throws IOException {
+        NbtKeyCache cache = NBT.getKeyCache();
+        if (cache == null) { return input.readUTF(); }
+        if (input instanceof ByteBufferDataInput) {
+            return ((ByteBufferDataInput) input).readKey(cache);
+        }
+        return cache.intern(input.readUTF());
+    }
+}
@@ -0,0 +1,148 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Set of paths into a compound tag that can be read without decoding the rest of the data.
+ * <p/>
+ * Paths use the same names as {@link TagCompound#getTagDeep(String...)} on the root value. Only the tags at the end of
+ * the paths are decoded, everything else is skipped by its length. Reading stops as soon as all paths were found.
+ * <p/>
+ * For example, reading the position and inhabited time of a chunk:
+ * <p/>
+ * <code>
+ * NbtProjection projection = new NbtProjection()
+ * &nbsp;       .add("Level", "xPos")
+ * &nbsp;       .add("Level", "zPos")
+ * &nbsp;       .add("Level", "InhabitedTime");
+ * TagCompound values = projection.read(input);
+ * long inhabitedTime = values.getTagDeep("Level", "InhabitedTime").asLong().getValue();
+ * </code>
+ * <p/>
+ * A projection may be used by multiple threads once all paths were added.
+ */
+public final class NbtProjection {
+    private final Node root = new Node();
+
+    /**
+     * Add a path to read. If a path is a prefix of another one, the whole tag at the shorter path is read.
+     *
+     * @return this projection.
+     */
+    public NbtProjection add(String... path) {
+        assert path.length > 0;
+        Node node = this.root;
+        for (String name : path) {
+            assert name != null;
+            if (node.isLeaf()) { return this; }
+            Node child = node.children.get(name);
+            if (child == null) {
+                child = new Node();
+                node.children.put(name, child);
+            }
+            node = child;
+        }
+        if (node.isLeaf()) { return this; }
+        // paths below the new end are replaced by it
+        int added = 1 - node.leaves;
+        node.children.clear();
+        node.leaves = 1;
+        Node parent = this.root;
+        for (String name : path) {
+            parent.leaves += added;
+            parent = parent.children.get(name);
+        }
+        return this;
+    }
+
+    /**
+     * Read the tags at the paths of this projection from a NamedTag. Tags that do not exist or whose parents are not
+     * compounds are missing from the result.
+     * <p/>
+     * The input is left at an unspecified position inside the tag.
+     *
+     * @return a compound containing the tags that were found at their paths.
+     */
+    public TagCompound read(DataInput input) throws IOException {
+        TagCompound result = new TagCompound();
+        byte id = input.readByte();
+        if (id != TagType.COMPOUND.getId()) { return result; }
+        NbtReader.skip(input, input.readUnsignedShort());
+        new Reader(input, this.root.leaves).readCompound(this.root, result);
+        return result;
+    }
+
+    /**
+     * Read the tags at the paths of this projection from a NamedTag in the given buffer, starting at its position. The
+     * position of the buffer is not changed.
+     *
+     * @see #read(java.io.DataInput)
+     */
+    public TagCompound read(ByteBuffer buffer) throws IOException {
+        return this.read(new ByteBufferDataInput(buffer));
+    }
+
+    private static class Reader {
+        private final DataInput input;
+        /**
+         * Number of paths that were neither read nor found to be missing.
+         */
+        private int unresolved;
+
+        Reader(DataInput input, int unresolved) {
+            this.input = input;
+            this.unresolved = unresolved;
+        }
+
+        /**
+         * Read the entries of a compound that belong to the given node. Returns early without reading the end of the
+         * compound once all paths were resolved.
+         */
+        void readCompound(Node node, TagCompound result) throws IOException {
+            int start = this.unresolved;
+            while (this.unresolved > 0) {
+                byte id = this.input.readByte();
+                if (id == 0) {
+                    // paths below this node that were not seen do not exist
+                    this.unresolved -= node.leaves - (start - this.unresolved);
+                    return;
+                }
+                TagType type = NbtReader.forId(id);
+                String name = NbtKeyCache.readKey(this.input);
+                Node child = node.children.get(name);
+                if (child == null) {
+                    NbtReader.skipPayload(this.input, type);
+                } else if (child.isLeaf()) {
+                    result.addTag(name, type.read(this.input));
+                    this.unresolved--;
+                } else if (type == TagType.COMPOUND) {
+                    TagCompound compound = new TagCompound();
+                    this.readCompound(child, compound);
+                    if (compound.size() > 0) { result.addTag(name, compound); }
+                } else {
+                    NbtReader.skipPayload(this.input, type);
+                    this.unresolved -= child.leaves;
+                }
+            }
+        }
+    }
+
+    private static class Node {
+        /**
+         * Child nodes by name, empty for the ends of paths.
+         */
+        final Map<String, Node> children = new HashMap<>();
+        /**
+         * Number of paths ending in or below this node.
+         */
+        int leaves = 0;
+
+        boolean isLeaf() {
+            return this.leaves > 0 && this.children.isEmpty();
+        }
+    }
+}
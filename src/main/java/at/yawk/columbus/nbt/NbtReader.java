@@ -0,0 +1,400 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Pull parser that reads NBT data value by value without building a tag tree.
+ * <p/>
+ * Inside a compound (and at the root), {@link #hasNext()} reads the type of the next entry, which is then consumed by
+ * calling {@link #nextName()} followed by a value method matching its type, or by {@link #skipValue()}. Inside a list,
+ * {@link #hasNext()} returns whether elements remain and every element is read with a value method directly.
+ * <p/>
+ * For example, reading the position of a chunk and skipping everything else:
+ * <p/>
+ * <code>
+ * reader.nextName();
+ * reader.beginCompound();
+ * reader.nextName(); // "Level"
+ * reader.beginCompound();
+ * while (reader.hasNext()) {
+ * &nbsp;   switch (reader.nextName()) {
+ * &nbsp;   case "xPos": x = reader.intValue(); break;
+ * &nbsp;   case "zPos": z = reader.intValue(); break;
+ * &nbsp;   default: reader.skipValue();
+ * &nbsp;   }
+ * }
+ * reader.endCompound();
+ * </code>
+ * <p/>
+ * Methods that do not match the structure of the data throw an {@link java.lang.IllegalStateException}.
+ */
+public class NbtReader {
+    private static final byte ROOT = 0;
+    private static final byte COMPOUND = 1;
+    private static final byte LIST = 2;
+
+    private final DataInput input;
+
+    /**
+     * ROOT, COMPOUND or LIST for each nesting level.
+     */
+    private byte[] kinds = new byte[8];
+    /**
+     * Remaining elements for list levels, remaining entries (1 or 0) for the root.
+     */
+    private int[] remaining = new int[8];
+    /**
+     * Element types for list levels.
+     */
+    private TagType[] elementTypes = new TagType[8];
+    private int depth = 0;
+
+    /**
+     * Type of the next entry of the current compound, null if it was not read yet.
+     */
+    private TagType pending;
+    /**
+     * Whether the name of the pending entry was read.
+     */
+    private boolean nameRead;
+    /**
+     * Whether the end tag of the current compound was read.
+     */
+    private boolean ended;
+
+    public NbtReader(DataInput input) {
+        assert input != null;
+        this.input = input;
+        this.kinds[0] = ROOT;
+        this.remaining[0] = 1;
+    }
+
+    /**
+     * Returns whether the current compound or list has more entries.
+     */
+    public boolean hasNext() throws IOException {
+        byte kind = this.kinds[this.depth];
+        if (kind == LIST) { return this.remaining[this.depth] > 0; }
+        if (kind == ROOT && this.remaining[this.depth] == 0) { return false; }
+        if (this.ended) { return false; }
+        if (this.pending == null) {
+            byte id = this.input.readByte();
+            if (id == 0) {
+                this.ended = true;
+                return false;
+            }
+            this.pending = forId(id);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the type of the next value or null if the current compound or list has no more entries.
+     */
+    public TagType peek() throws IOException {
+        if (this.kinds[this.depth] == LIST) {
+            return this.remaining[this.depth] > 0 ? this.elementTypes[this.depth] : null;
+        }
+        return this.hasNext() ? this.pending : null;
+    }
+
+    /**
+     * Read the name of the next compound entry.
+     */
+    public String nextName() throws IOException {
+        if (this.kinds[this.depth] == LIST) {
+            throw new IllegalStateException("List elements have no names");
+        }
+        if (!this.hasNext()) {
+            throw new IllegalStateException("No more entries");
+        }
+        if (this.nameRead) {
+            throw new IllegalStateException("Name was already read");
+        }
+        this.nameRead = true;
+        return NbtKeyCache.readKey(this.input);
+    }
+
+    /**
+     * Enter the compound value that is next.
+     */
+    public void beginCompound() throws IOException {
+        this.expect(TagType.COMPOUND);
+        this.push(COMPOUND, 0, null);
+    }
+
+    /**
+     * Leave the current compound. All entries must have been consumed.
+     */
+    public void endCompound() throws IOException {
+        if (this.kinds[this.depth] != COMPOUND) {
+            throw new IllegalStateException("Not in a compound");
+        }
+        if (this.hasNext()) {
+            throw new IllegalStateException("Compound has unread entries");
+        }
+        this.pop();
+    }
+
+    /**
+     * Enter the list value that is next.
+     *
+     * @return the number of elements in the list.
+     */
+    public int beginList() throws IOException {
+        this.expect(TagType.LIST);
+        byte id = this.input.readByte();
+        int length = this.input.readInt();
+        this.push(LIST, length, id == 0 ? null : forId(id));
+        return length;
+    }
+
+    /**
+     * Leave the current list. All elements must have been consumed.
+     */
+    public void endList() {
+        if (this.kinds[this.depth] != LIST) {
+            throw new IllegalStateException("Not in a list");
+        }
+        if (this.remaining[this.depth] != 0) {
+            throw new IllegalStateException("List has " + this.remaining[this.depth] + " unread elements");
+        }
+        this.pop();
+    }
+
+    public byte byteValue() throws IOException {
+        this.expect(TagType.BYTE);
+        return this.input.readByte();
+    }
+
+    public short shortValue() throws IOException {
+        this.expect(TagType.SHORT);
+        return this.input.readShort();
+    }
+
+    public int intValue() throws IOException {
+        this.expect(TagType.INT);
+        return this.input.readInt();
+    }
+
+    public long longValue() throws IOException {
+        this.expect(TagType.LONG);
+        return this.input.readLong();
+    }
+
+    public float floatValue() throws IOException {
+        this.expect(TagType.FLOAT);
+        return this.input.readFloat();
+    }
+
+    public double doubleValue() throws IOException {
+        this.expect(TagType.DOUBLE);
+        return this.input.readDouble();
+    }
+
+    public String stringValue() throws IOException {
+        this.expect(TagType.STRING);
+        return this.input.readUTF();
+    }
+
+    public byte[] byteArray() throws IOException {
+        this.expect(TagType.ARRAY_BYTE);
+        byte[] value = new byte[this.input.readInt()];
+        this.input.readFully(value);
+        return value;
+    }
+
+    public int[] intArray() throws IOException {
+        this.expect(TagType.ARRAY_INT);
+        int[] value = new int[this.input.readInt()];
+        BulkIo.readInts(this.input, value, value.length);
+        return value;
+    }
+
+    /**
+     * Read the next value, whatever its type, as a tag tree.
+     */
+    public Tag tagValue() throws IOException {
+        TagType type = this.nextValueType();
+        this.consume();
+        return type.read(this.input);
+    }
+
+    /**
+     * Skip the next value (and its name, if it was not read yet) without decoding it.
+     */
+    public void skipValue() throws IOException {
+        TagType type;
+        if (this.kinds[this.depth] == LIST) {
+            type = this.nextValueType();
+        } else {
+            if (!this.hasNext()) {
+                throw new IllegalStateException("No more entries");
+            }
+            if (!this.nameRead) {
+                skip(this.input, this.input.readUnsignedShort());
+            }
+            type = this.pending;
+        }
+        this.consume();
+        skipPayload(this.input, type);
+    }
+
+    /**
+     * Skip the payload of a value of the given type.
+     */
+    static void skipPayload(DataInput input, TagType type) throws IOException {
+        switch (type) {
+        case BYTE:
+            skip(input, 1);
+            break;
+        case SHORT:
+            skip(input, 2);
+            break;
+        case INT:
+        case FLOAT:
+            skip(input, 4);
+            break;
+        case LONG:
+        case DOUBLE:
+            skip(input, 8);
+            break;
+        case STRING:
+            skip(input, input.readUnsignedShort());
+            break;
+        case ARRAY_BYTE:
+            skip(input, input.readInt());
+            break;
+        case ARRAY_INT:
+            skip(input, input.readInt() * 4L);
+            break;
+        case LIST:
+            byte elementId = input.readByte();
+            int length = input.readInt();
+            if (length > 0) {
+                TagType elementType = forId(elementId);
+                int width = fixedWidth(elementType);
+                if (width != -1) {
+                    skip(input, (long) width * length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        skipPayload(input, elementType);
+                    }
+                }
+            }
+            break;
+        case COMPOUND:
+            while (true) {
+                byte id = input.readByte();
+                if (id == 0) { break; }
+                skip(input, input.readUnsignedShort());
+                skipPayload(input, forId(id));
+            }
+            break;
+        default:
+            throw new AssertionError(type);
+        }
+    }
+
+    /**
+     * Byte length of values of the given type or -1 if it is variable.
+     */
+    private static int fixedWidth(TagType type) {
+        switch (type) {
+        case BYTE:
+            return 1;
+        case SHORT:
+            return 2;
+        case INT:
+        case FLOAT:
+            return 4;
+        case LONG:
+        case DOUBLE:
+            return 8;
+        default:
+            return -1;
+        }
+    }
+
+    static void skip(DataInput input, long count) throws IOException {
+        while (count > 0) {
+            int skipped = input.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                // skipBytes may give up early, readByte will throw on EOF
+                input.readByte();
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Returns the type of the value that is to be read next, checking that its name was read if it is in a compound.
+     */
+    private TagType nextValueType() throws IOException {
+        if (this.kinds[this.depth] == LIST) {
+            if (this.remaining[this.depth] <= 0) {
+                throw new IllegalStateException("No more elements");
+            }
+            return this.elementTypes[this.depth];
+        }
+        if (!this.hasNext()) {
+            throw new IllegalStateException("No more entries");
+        }
+        if (!this.nameRead) {
+            throw new IllegalStateException("Name of the entry was not read");
+        }
+        return this.pending;
+    }
+
+    private void expect(TagType type) throws IOException {
+        TagType actual = this.nextValueType();
+        if (actual != type) {
+            throw new IllegalStateException("Expected " + type + " but was " + actual);
+        }
+        this.consume();
+    }
+
+    /**
+     * Mark the next value of the current level as read.
+     */
+    private void consume() {
+        if (this.kinds[this.depth] != COMPOUND) {
+            this.remaining[this.depth]--;
+        }
+        this.pending = null;
+        this.nameRead = false;
+    }
+
+    private void push(byte kind, int remaining, TagType elementType) {
+        this.depth++;
+        if (this.depth == this.kinds.length) {
+            this.kinds = Arrays.copyOf(this.kinds, this.depth * 2);
+            this.remaining = Arrays.copyOf(this.remaining, this.depth * 2);
+            this.elementTypes = Arrays.copyOf(this.elementTypes, this.depth * 2);
+        }
+        this.kinds[this.depth] = kind;
+        this.remaining[this.depth] = remaining;
+        this.elementTypes[this.depth] = elementType;
+        this.pending = null;
+        this.nameRead = false;
+        this.ended = false;
+    }
+
+    private void pop() {
+        this.elementTypes[this.depth] = null;
+        this.depth--;
+        this.pending = null;
+        this.nameRead = false;
+        this.ended = false;
+    }
+
+    static TagType forId(byte id) throws IOException {
+        if (id <= 0 || id >= 12) {
+            throw new IOException("Unknown tag type " + id);
+        }
+        return TagType.forId(id);
+    }
+}
@@ -0,0 +1,247 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming NBT writer, the counterpart of {@link at.yawk.columbus.nbt.NbtReader}. Values are written directly to the
+ * output without building a tag tree.
+ * <p/>
+ * Inside a compound (and at the root), every value has to be preceded by a call to {@link #name(String)}. Lists are
+ * written by announcing their element type and length with {@link #beginList(TagType, int)} followed by exactly that
+ * many values of that type.
+ * <p/>
+ * Methods that do not match the structure being written throw an {@link java.lang.IllegalStateException}.
+ */
+public class NbtWriter {
+    private static final byte ROOT = 0;
+    private static final byte COMPOUND = 1;
+    private static final byte LIST = 2;
+    private static final byte BYTE_ARRAY = 3;
+
+    private final DataOutput output;
+
+    /**
+     * ROOT, COMPOUND, LIST or BYTE_ARRAY for each nesting level.
+     */
+    private byte[] kinds = new byte[8];
+    /**
+     * Remaining elements for list and byte array levels, remaining values (1 or 0) for the root.
+     */
+    private int[] remaining = new int[8];
+    /**
+     * Element types for list levels.
+     */
+    private TagType[] elementTypes = new TagType[8];
+    private int depth = 0;
+
+    /**
+     * Name of the next compound entry, null if none was given yet.
+     */
+    private String pendingName;
+
+    public NbtWriter(DataOutput output) {
+        assert output != null;
+        this.output = output;
+        this.kinds[0] = ROOT;
+        this.remaining[0] = 1;
+    }
+
+    /**
+     * Set the name of the next compound entry.
+     */
+    public void name(String name) {
+        if (this.kinds[this.depth] != COMPOUND && this.kinds[this.depth] != ROOT) {
+            throw new IllegalStateException("Only compound entries have names");
+        }
+        if (this.pendingName != null) {
+            throw new IllegalStateException("Name was already given");
+        }
+        assert name != null;
+        this.pendingName = name;
+    }
+
+    public void beginCompound() throws IOException {
+        this.header(TagType.COMPOUND);
+        this.push(COMPOUND, 0, null);
+    }
+
+    public void endCompound() throws IOException {
+        if (this.kinds[this.depth] != COMPOUND) {
+            throw new IllegalStateException("Not in a compound");
+        }
+        if (this.pendingName != null) {
+            throw new IllegalStateException("Named entry " + this.pendingName + " has no value");
+        }
+        this.output.write(0);
+        this.pop();
+    }
+
+    /**
+     * Begin a list with the given element type and length.
+     */
+    public void beginList(TagType elementType, int length) throws IOException {
+        assert elementType != null;
+        assert length >= 0 : length;
+        this.header(TagType.LIST);
+        this.output.write(elementType.getId());
+        this.output.writeInt(length);
+        this.push(LIST, length, elementType);
+    }
+
+    public void endList() {
+        if (this.kinds[this.depth] != LIST) {
+            throw new IllegalStateException("Not in a list");
+        }
+        if (this.remaining[this.depth] != 0) {
+            throw new IllegalStateException("List is missing " + this.remaining[this.depth] + " elements");
+        }
+        this.pop();
+    }
+
+    public void byteValue(byte value) throws IOException {
+        this.header(TagType.BYTE);
+        this.output.write(value);
+    }
+
+    public void shortValue(short value) throws IOException {
+        this.header(TagType.SHORT);
+        this.output.writeShort(value);
+    }
+
+    public void intValue(int value) throws IOException {
+        this.header(TagType.INT);
+        this.output.writeInt(value);
+    }
+
+    public void longValue(long value) throws IOException {
+        this.header(TagType.LONG);
+        this.output.writeLong(value);
+    }
+
+    public void floatValue(float value) throws IOException {
+        this.header(TagType.FLOAT);
+        this.output.writeFloat(value);
+    }
+
+    public void doubleValue(double value) throws IOException {
+        this.header(TagType.DOUBLE);
+        this.output.writeDouble(value);
+    }
+
+    public void stringValue(String value) throws IOException {
+        this.header(TagType.STRING);
+        this.output.writeUTF(value);
+    }
+
+    public void byteArray(byte[] value) throws IOException {
+        this.byteArray(value, 0, value.length);
+    }
+
+    public void byteArray(byte[] value, int offset, int length) throws IOException {
+        this.header(TagType.ARRAY_BYTE);
+        this.output.writeInt(length);
+        this.output.write(value, offset, length);
+    }
+
+    /**
+     * Begin a byte array whose contents are written one by one with {@link #arrayByte(int)}. Useful for arrays that are
+     * computed while writing and would otherwise need a temporary copy.
+     */
+    public void beginByteArray(int length) throws IOException {
+        assert length >= 0 : length;
+        this.header(TagType.ARRAY_BYTE);
+        this.output.writeInt(length);
+        this.push(BYTE_ARRAY, length, null);
+    }
+
+    /**
+     * Write the next element of the current byte array.
+     */
+    public void arrayByte(int value) throws IOException {
+        if (this.kinds[this.depth] != BYTE_ARRAY) {
+            throw new IllegalStateException("Not in a byte array");
+        }
+        if (this.remaining[this.depth]-- <= 0) {
+            throw new IllegalStateException("Byte array is already complete");
+        }
+        this.output.write(value);
+    }
+
+    public void endByteArray() {
+        if (this.kinds[this.depth] != BYTE_ARRAY) {
+            throw new IllegalStateException("Not in a byte array");
+        }
+        if (this.remaining[this.depth] != 0) {
+            throw new IllegalStateException("Byte array is missing " + this.remaining[this.depth] + " elements");
+        }
+        this.pop();
+    }
+
+    public void intArray(int[] value) throws IOException {
+        this.header(TagType.ARRAY_INT);
+        this.output.writeInt(value.length);
+        for (int i : value) {
+            this.output.writeInt(i);
+        }
+    }
+
+    /**
+     * Write an existing tag tree as the next value.
+     */
+    public void tagValue(Tag tag) throws IOException {
+        this.header(tag.getType());
+        tag.serialize(this.output);
+    }
+
+    /**
+     * Write type and name of the next value if necessary and check that it fits the current structure.
+     */
+    private void header(TagType type) throws IOException {
+        switch (this.kinds[this.depth]) {
+        case LIST:
+            if (this.remaining[this.depth] <= 0) {
+                throw new IllegalStateException("List is already complete");
+            }
+            if (this.elementTypes[this.depth] != type) {
+                throw new IllegalStateException("Cannot add " + type + " to list of " +
+                                                this.elementTypes[this.depth]);
+            }
+            this.remaining[this.depth]--;
+            break;
+        case BYTE_ARRAY:
+            throw new IllegalStateException("Byte array is not complete");
+        default:
+            if (this.kinds[this.depth] == ROOT) {
+                if (this.remaining[this.depth] <= 0) {
+                    throw new IllegalStateException("Root value was already written");
+                }
+                this.remaining[this.depth]--;
+            }
+            if (this.pendingName == null) {
+                throw new IllegalStateException("Compound entries need a name");
+            }
+            this.output.write(type.getId());
+            this.output.writeUTF(this.pendingName);
+            this.pendingName = null;
+        }
+    }
+
+    private void push(byte kind, int remaining, TagType elementType) {
+        this.depth++;
+        if (this.depth == this.kinds.length) {
+            this.kinds = Arrays.copyOf(this.kinds, this.depth * 2);
+            this.remaining = Arrays.copyOf(this.remaining, this.depth * 2);
+            this.elementTypes = Arrays.copyOf(this.elementTypes, this.depth * 2);
+        }
+        this.kinds[this.depth] = kind;
+        this.remaining[this.depth] = remaining;
+        this.elementTypes[this.depth] = elementType;
+    }
+
+    private void pop() {
+        this.elementTypes[this.depth] = null;
+        this.depth--;
+    }
+}
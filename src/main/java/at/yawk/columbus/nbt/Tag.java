@@ -4,7 +4,6 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import lombok.AccessLevel;
-import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 /**
@@ -12,11 +11,10 @@ import lombok.NoArgsConstructor;
  */
 @NoArgsConstructor(access = AccessLevel.PACKAGE)
 public abstract class Tag implements Cloneable {
-    @Getter(lazy = true) private final TagType type = this.lookupType();
-
-    private final TagType lookupType() {
-        return TagType.forClass(this.getClass());
-    }
+    /**
+     * Returns the type of this tag.
+     */
+    public abstract TagType getType();
 
     abstract void serialize(DataOutput output) throws IOException;
 
@@ -19,6 +19,11 @@ import lombok.NoArgsConstructor;
 public final class TagArrayByte extends TagValue {
     private byte[] value;
     
+    @Override
+    public TagType getType() {
+        return TagType.ARRAY_BYTE;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         byte[] currentValue = this.getValue();
@@ -3,7 +3,6 @@ package at.yawk.columbus.nbt;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -20,22 +19,23 @@ import lombok.NoArgsConstructor;
 public final class TagArrayInt extends TagValue {
     private int[] value;
     
+    @Override
+    public TagType getType() {
+        return TagType.ARRAY_INT;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         int[] currentValue = this.getValue();
         output.writeInt(currentValue.length);
-        byte[] buf = new byte[currentValue.length << 2];
-        ByteBuffer.wrap(buf).asIntBuffer().put(currentValue);
-        output.write(buf);
+        BulkIo.writeInts(output, currentValue, currentValue.length);
     }
     
     @Override
     void deserialize(DataInput input) throws IOException {
         int length = input.readInt();
-        byte[] buf = new byte[length << 2];
-        input.readFully(buf);
         int[] newValue = new int[length];
-        ByteBuffer.wrap(buf).asIntBuffer().get(newValue);
+        BulkIo.readInts(input, newValue, length);
         this.setValue(newValue);
     }
     
@@ -16,9 +16,14 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 @AllArgsConstructor
-public final class TagByte extends TagValue {
+public class TagByte extends TagValue {
     private byte value;
     
+    @Override
+    public TagType getType() {
+        return TagType.BYTE;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.write(this.getValue());
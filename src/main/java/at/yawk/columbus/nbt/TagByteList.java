@@ -0,0 +1,113 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * List of byte values backed by a byte array.
+ */
+public final class TagByteList extends TagPrimitiveList {
+    private byte[] values;
+
+    public TagByteList() {
+        this.values = new byte[0];
+    }
+
+    public TagByteList(byte... initialValues) {
+        this.values = initialValues.clone();
+        this.size = initialValues.length;
+    }
+
+    @Override
+    TagType getElementType() {
+        return TagType.BYTE;
+    }
+
+    @Override
+    public byte getByte(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Replace the value at the given index.
+     */
+    public synchronized void setByte(int index, byte value) {
+        this.checkIndex(index);
+        this.values[index] = value;
+    }
+
+    /**
+     * Append a byte value.
+     */
+    public synchronized void addByte(byte value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Returns a copy of the values of this list.
+     */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.checkIndex(index);
+        return new Element(index);
+    }
+
+    @Override
+    void store(int index, Tag tag) {
+        this.values[index] = ((TagByte) tag).getValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, grow(this.values.length, capacity));
+        }
+    }
+
+    @Override
+    void writeValues(DataOutput output) throws IOException {
+        output.write(this.values, 0, this.size);
+    }
+
+    @Override
+    void readValues(DataInput input, int length) throws IOException {
+        byte[] newValues = new byte[length];
+        input.readFully(newValues);
+        this.values = newValues;
+        this.size = length;
+    }
+
+    @Override
+    public TagByteList clone() {
+        return new TagByteList(this.toByteArray());
+    }
+
+    /**
+     * Element tag that reads and writes the value at its index of this list.
+     */
+    private final class Element extends TagByte {
+        private final int index;
+
+        Element(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public byte getValue() {
+            return TagByteList.this.getByte(this.index);
+        }
+
+        @Override
+        public void setValue(byte value) {
+            TagByteList.this.setByte(this.index, value);
+        }
+    }
+}
@@ -1,26 +1,42 @@
 package at.yawk.columbus.nbt;
 
-import com.google.common.collect.Maps;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import java.util.Set;
+import java.util.function.BiConsumer;
 import lombok.NoArgsConstructor;
 
 /**
  * Compound (Map) tag.
+ * <p/>
+ * Entries are kept in insertion order, which is also the order they are serialized in. Names and values are stored in
+ * parallel arrays. Small compounds, by far the most common ones, are searched linearly, larger ones additionally keep
+ * an open addressing index of the entries. Compounds are equal if they contain the same entries in any order.
  */
-@Data
-@EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 public final class TagCompound extends TagStructure {
-    private Map<String, NamedTag> tags = Maps.newHashMap();
+    /**
+     * Compounds with more entries than this are indexed.
+     */
+    private static final int LINEAR_SCAN_LIMIT = 8;
+    private static final String[] NO_NAMES = new String[0];
+    private static final Tag[] NO_VALUES = new Tag[0];
+
+    private String[] names = NO_NAMES;
+    private Tag[] values = NO_VALUES;
+    private int size = 0;
+    /**
+     * Open addressing table of entry indices + 1, 0 marks a free slot. Null while this compound is small.
+     */
+    private int[] index = null;
 
     public TagCompound(NamedTag... initialTags) {
         this();
@@ -29,37 +45,97 @@ public final class TagCompound extends TagStructure {
         }
     }
 
-    private TagCompound(Map<String, NamedTag> initialTags) {
-        this();
-        this.setTags(initialTags);
-    }
-
     /**
      * Replace the tags with the given tags.
      */
     public synchronized void setTags(Map<String, NamedTag> tags) {
-        this.tags = Maps.newHashMap(tags);
+        this.names = NO_NAMES;
+        this.values = NO_VALUES;
+        this.size = 0;
+        this.index = null;
+        for (NamedTag tag : tags.values()) {
+            this.put(tag.getName(), tag.getValue());
+        }
     }
 
     /**
-     * Returns an immutable map of all tags in this compound.
+     * Returns an immutable map view of all tags in this compound, iterating in insertion order. Named tags are created
+     * on access, prefer {@link #getTag(String)} and {@link #forEach(java.util.function.BiConsumer)}.
      */
     public Map<String, NamedTag> getTags() {
-        return Collections.unmodifiableMap(this.tags);
+        return new AbstractMap<String, NamedTag>() {
+            @Override
+            public NamedTag get(Object key) {
+                if (!(key instanceof String)) { return null; }
+                Tag tag = TagCompound.this.getTagIfExists((String) key);
+                return tag == null ? null : new NamedTag((String) key, tag);
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && TagCompound.this.hasTag((String) key);
+            }
+
+            @Override
+            public Set<Entry<String, NamedTag>> entrySet() {
+                return new AbstractSet<Entry<String, NamedTag>>() {
+                    @Override
+                    public Iterator<Entry<String, NamedTag>> iterator() {
+                        return new Iterator<Entry<String, NamedTag>>() {
+                            int i = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return this.i < TagCompound.this.size;
+                            }
+
+                            @Override
+                            public Entry<String, NamedTag> next() {
+                                if (!this.hasNext()) { throw new NoSuchElementException(); }
+                                String name = TagCompound.this.names[this.i];
+                                Tag value = TagCompound.this.values[this.i++];
+                                return new SimpleImmutableEntry<>(name, new NamedTag(name, value));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return TagCompound.this.size;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Call the given consumer with the name and value of every tag in insertion order.
+     */
+    public void forEach(BiConsumer<String, Tag> consumer) {
+        for (int i = 0; i < this.size; i++) {
+            consumer.accept(this.names[i], this.values[i]);
+        }
+    }
+
+    /**
+     * Returns the amount of tags in this compound.
+     */
+    public int size() {
+        return this.size;
     }
 
     /**
      * Add a tag with a name.
      */
     public synchronized void addTag(String name, Tag tag) {
-        this.tags.put(name, new NamedTag(name, tag));
+        this.put(name, tag);
     }
 
     /**
      * Add a NamedTag directly.
      */
     public synchronized void addTag(NamedTag named) {
-        this.tags.put(named.getName(), named);
+        this.put(named.getName(), named.getValue());
     }
 
     /**
@@ -68,7 +144,17 @@ public final class TagCompound extends TagStructure {
      * @throws java.util.NoSuchElementException if no tag with the name was found.
      */
     public Tag getTag(String name) {
-        return getOptional(name).orElseThrow(() -> new NoSuchElementException(name));
+        Tag tag = this.getTagIfExists(name);
+        if (tag == null) { throw new NoSuchElementException(name); }
+        return tag;
+    }
+
+    /**
+     * Returns a tag by name or null if no tag with that name exists.
+     */
+    public Tag getTagIfExists(String name) {
+        int i = this.find(name);
+        return i == -1 ? null : this.values[i];
     }
 
     /**
@@ -111,50 +197,135 @@ public final class TagCompound extends TagStructure {
      * Returns whether this compound contains a tag with the given name.
      */
     public boolean hasTag(String name) {
-        return getOptional(name).isPresent();
+        return this.find(name) != -1;
     }
 
     /**
      * Returns a tag by name or an empty optional if no tag with that name exists.
      */
     public Optional<Tag> getOptional(String name) {
-        return Optional.ofNullable(this.getTags().get(name)).map(NamedTag::getValue);
+        return Optional.ofNullable(this.getTagIfExists(name));
     }
 
     /**
      * Removes a tag by name.
      */
     public synchronized void removeTag(String name) {
-        this.tags.remove(name);
+        int i = this.find(name);
+        if (i == -1) { return; }
+        this.size--;
+        System.arraycopy(this.names, i + 1, this.names, i, this.size - i);
+        System.arraycopy(this.values, i + 1, this.values, i, this.size - i);
+        this.names[this.size] = null;
+        this.values[this.size] = null;
+        if (this.index != null) { this.rebuildIndex(); }
+    }
+
+    /**
+     * Returns the entry index of the given name or -1.
+     */
+    private int find(String name) {
+        int[] index = this.index;
+        if (index == null) {
+            for (int i = 0; i < this.size; i++) {
+                if (name.equals(this.names[i])) { return i; }
+            }
+            return -1;
+        }
+        int mask = index.length - 1;
+        for (int slot = spread(name.hashCode()) & mask; ; slot = slot + 1 & mask) {
+            int entry = index[slot];
+            if (entry == 0) { return -1; }
+            if (name.equals(this.names[entry - 1])) { return entry - 1; }
+        }
+    }
+
+    private void put(String name, Tag tag) {
+        assert name != null;
+        assert tag != null;
+        int i = this.find(name);
+        if (i != -1) {
+            this.values[i] = tag;
+            return;
+        }
+        if (this.size == this.names.length) {
+            int capacity = Math.max(4, this.size * 2);
+            this.names = Arrays.copyOf(this.names, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.names[this.size] = name;
+        this.values[this.size] = tag;
+        this.size++;
+        if (this.index != null && this.size * 2 <= this.index.length) {
+            this.insertIndex(this.size - 1);
+        } else if (this.size > LINEAR_SCAN_LIMIT) {
+            this.rebuildIndex();
+        }
+    }
+
+    private void rebuildIndex() {
+        if (this.size <= LINEAR_SCAN_LIMIT) {
+            this.index = null;
+            return;
+        }
+        int capacity = Integer.highestOneBit(this.size) << 2;
+        this.index = new int[capacity];
+        for (int i = 0; i < this.size; i++) {
+            this.insertIndex(i);
+        }
+    }
+
+    private void insertIndex(int entry) {
+        int mask = this.index.length - 1;
+        int slot = spread(this.names[entry].hashCode()) & mask;
+        while (this.index[slot] != 0) {
+            slot = slot + 1 & mask;
+        }
+        this.index[slot] = entry + 1;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ hash >>> 16;
+    }
+
+    @Override
+    public TagType getType() {
+        return TagType.COMPOUND;
     }
 
     @Override
     synchronized void serialize(DataOutput output) throws IOException {
-        Map<String, NamedTag> currentTags = this.getTags();
-        for (Entry<String, NamedTag> entry : currentTags.entrySet()) {
-            assert entry.getKey().equals(entry.getValue().getName());
-            output.write(entry.getValue().getValue().getType().getId());
-            output.writeUTF(entry.getKey());
-            entry.getValue().getValue().serialize(output);
+        for (int i = 0; i < this.size; i++) {
+            output.write(this.values[i].getType().getId());
+            output.writeUTF(this.names[i]);
+            this.values[i].serialize(output);
         }
         output.write((byte) 0);
     }
 
     @Override
     void deserialize(DataInput input) throws IOException {
-        Map<String, NamedTag> newTags = Maps.newHashMap();
+        TagCompound read = new TagCompound();
         while (true) {
             byte typeByte = input.readByte();
             if (typeByte == 0) {
                 break;
             }
             TagType type = TagType.forId(typeByte);
-            String name = input.readUTF();
-            Tag tag = type.newInstance();
-            tag.deserialize(input);
-            newTags.put(name, new NamedTag(name, tag));
+            String name = NbtKeyCache.readKey(input);
+            if (type == TagType.LIST && input instanceof ByteBufferDataInput &&
+                ((ByteBufferDataInput) input).isLazy(name)) {
+                read.put(name, ((ByteBufferDataInput) input).readLazyList());
+            } else {
+                read.put(name, type.read(input));
+            }
+        }
+        synchronized (this) {
+            this.names = read.names;
+            this.values = read.values;
+            this.size = read.size;
+            this.index = read.index;
         }
-        this.tags = newTags;
     }
 
     /**
@@ -167,6 +338,16 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getByte();
     }
 
+    /**
+     * Return a byte by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public byte getByte(String name, byte defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getByte();
+    }
+
     /**
      * Return a short by name.
      *
@@ -177,6 +358,16 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getShort();
     }
 
+    /**
+     * Return a short by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public short getShort(String name, short defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getShort();
+    }
+
     /**
      * Return an int by name.
      *
@@ -187,6 +378,16 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getInt();
     }
 
+    /**
+     * Return an int by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public int getInt(String name, int defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getInt();
+    }
+
     /**
      * Return an int by name.
      *
@@ -197,6 +398,16 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getLong();
     }
 
+    /**
+     * Return a long by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public long getLong(String name, long defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getLong();
+    }
+
     /**
      * Return a float by name.
      *
@@ -207,6 +418,16 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getFloat();
     }
 
+    /**
+     * Return a float by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public float getFloat(String name, float defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getFloat();
+    }
+
     /**
      * Return a double by name.
      *
@@ -217,6 +438,16 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getDouble();
     }
 
+    /**
+     * Return a double by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public double getDouble(String name, double defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getDouble();
+    }
+
     /**
      * Return a Number by name.
      *
@@ -237,11 +468,56 @@ public final class TagCompound extends TagStructure {
         return this.getTag(name).getString();
     }
 
+    /**
+     * Return a String by name or the given default if no tag with the name exists.
+     *
+     * @throws java.lang.ClassCastException if the tag is of a different type.
+     */
+    public String getString(String name, String defaultValue) {
+        Tag tag = this.getTagIfExists(name);
+        return tag == null ? defaultValue : tag.getString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) { return true; }
+        if (!(o instanceof TagCompound)) { return false; }
+        TagCompound other = (TagCompound) o;
+        if (other.size != this.size) { return false; }
+        for (int i = 0; i < this.size; i++) {
+            if (!this.values[i].equals(other.getTagIfExists(this.names[i]))) { return false; }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // independent of the order of the entries
+        int hash = 0;
+        for (int i = 0; i < this.size; i++) {
+            hash += this.names[i].hashCode() ^ this.values[i].hashCode();
+        }
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "TagCompound(tags=" + this.getTags() + ")";
+    }
+
     /**
      * Clone this tag.
      */
     @Override
-    public TagCompound clone() {
-        return new TagCompound(Maps.transformValues(this.getTags(), NamedTag::clone));
+    public synchronized TagCompound clone() {
+        TagCompound clone = new TagCompound();
+        clone.names = Arrays.copyOf(this.names, this.size);
+        clone.values = new Tag[this.size];
+        for (int i = 0; i < this.size; i++) {
+            clone.values[i] = this.values[i].clone();
+        }
+        clone.size = this.size;
+        clone.index = this.index == null ? null : this.index.clone();
+        return clone;
     }
 }
@@ -16,9 +16,14 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 @AllArgsConstructor
-public final class TagDouble extends TagValue {
+public class TagDouble extends TagValue {
     private double value;
     
+    @Override
+    public TagType getType() {
+        return TagType.DOUBLE;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.writeDouble(this.getValue());
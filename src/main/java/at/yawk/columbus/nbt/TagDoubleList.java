@@ -0,0 +1,113 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * List of double values backed by a double array.
+ */
+public final class TagDoubleList extends TagPrimitiveList {
+    private double[] values;
+
+    public TagDoubleList() {
+        this.values = new double[0];
+    }
+
+    public TagDoubleList(double... initialValues) {
+        this.values = initialValues.clone();
+        this.size = initialValues.length;
+    }
+
+    @Override
+    TagType getElementType() {
+        return TagType.DOUBLE;
+    }
+
+    @Override
+    public double getDouble(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Replace the value at the given index.
+     */
+    public synchronized void setDouble(int index, double value) {
+        this.checkIndex(index);
+        this.values[index] = value;
+    }
+
+    /**
+     * Append a double value.
+     */
+    public synchronized void addDouble(double value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Returns a copy of the values of this list.
+     */
+    public synchronized double[] toDoubleArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.checkIndex(index);
+        return new Element(index);
+    }
+
+    @Override
+    void store(int index, Tag tag) {
+        this.values[index] = ((TagDouble) tag).getValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, grow(this.values.length, capacity));
+        }
+    }
+
+    @Override
+    void writeValues(DataOutput output) throws IOException {
+        BulkIo.writeDoubles(output, this.values, this.size);
+    }
+
+    @Override
+    void readValues(DataInput input, int length) throws IOException {
+        double[] newValues = new double[length];
+        BulkIo.readDoubles(input, newValues, length);
+        this.values = newValues;
+        this.size = length;
+    }
+
+    @Override
+    public TagDoubleList clone() {
+        return new TagDoubleList(this.toDoubleArray());
+    }
+
+    /**
+     * Element tag that reads and writes the value at its index of this list.
+     */
+    private final class Element extends TagDouble {
+        private final int index;
+
+        Element(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public double getValue() {
+            return TagDoubleList.this.getDouble(this.index);
+        }
+
+        @Override
+        public void setValue(double value) {
+            TagDoubleList.this.setDouble(this.index, value);
+        }
+    }
+}
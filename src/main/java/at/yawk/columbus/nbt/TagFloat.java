@@ -16,9 +16,14 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 @AllArgsConstructor
-public final class TagFloat extends TagValue {
+public class TagFloat extends TagValue {
     private float value;
     
+    @Override
+    public TagType getType() {
+        return TagType.FLOAT;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.writeFloat(this.getValue());
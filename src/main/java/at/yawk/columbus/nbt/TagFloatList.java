@@ -0,0 +1,113 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * List of float values backed by a float array.
+ */
+public final class TagFloatList extends TagPrimitiveList {
+    private float[] values;
+
+    public TagFloatList() {
+        this.values = new float[0];
+    }
+
+    public TagFloatList(float... initialValues) {
+        this.values = initialValues.clone();
+        this.size = initialValues.length;
+    }
+
+    @Override
+    TagType getElementType() {
+        return TagType.FLOAT;
+    }
+
+    @Override
+    public float getFloat(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Replace the value at the given index.
+     */
+    public synchronized void setFloat(int index, float value) {
+        this.checkIndex(index);
+        this.values[index] = value;
+    }
+
+    /**
+     * Append a float value.
+     */
+    public synchronized void addFloat(float value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Returns a copy of the values of this list.
+     */
+    public synchronized float[] toFloatArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.checkIndex(index);
+        return new Element(index);
+    }
+
+    @Override
+    void store(int index, Tag tag) {
+        this.values[index] = ((TagFloat) tag).getValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, grow(this.values.length, capacity));
+        }
+    }
+
+    @Override
+    void writeValues(DataOutput output) throws IOException {
+        BulkIo.writeFloats(output, this.values, this.size);
+    }
+
+    @Override
+    void readValues(DataInput input, int length) throws IOException {
+        float[] newValues = new float[length];
+        BulkIo.readFloats(input, newValues, length);
+        this.values = newValues;
+        this.size = length;
+    }
+
+    @Override
+    public TagFloatList clone() {
+        return new TagFloatList(this.toFloatArray());
+    }
+
+    /**
+     * Element tag that reads and writes the value at its index of this list.
+     */
+    private final class Element extends TagFloat {
+        private final int index;
+
+        Element(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public float getValue() {
+            return TagFloatList.this.getFloat(this.index);
+        }
+
+        @Override
+        public void setValue(float value) {
+            TagFloatList.this.setFloat(this.index, value);
+        }
+    }
+}
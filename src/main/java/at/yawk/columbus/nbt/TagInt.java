@@ -16,9 +16,14 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 @AllArgsConstructor
-public final class TagInt extends TagValue {
+public class TagInt extends TagValue {
     private int value;
     
+    @Override
+    public TagType getType() {
+        return TagType.INT;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.writeInt(this.getValue());
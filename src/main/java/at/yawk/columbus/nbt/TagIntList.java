@@ -0,0 +1,113 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * List of int values backed by an int array.
+ */
+public final class TagIntList extends TagPrimitiveList {
+    private int[] values;
+
+    public TagIntList() {
+        this.values = new int[0];
+    }
+
+    public TagIntList(int... initialValues) {
+        this.values = initialValues.clone();
+        this.size = initialValues.length;
+    }
+
+    @Override
+    TagType getElementType() {
+        return TagType.INT;
+    }
+
+    @Override
+    public int getInt(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Replace the value at the given index.
+     */
+    public synchronized void setInt(int index, int value) {
+        this.checkIndex(index);
+        this.values[index] = value;
+    }
+
+    /**
+     * Append an int value.
+     */
+    public synchronized void addInt(int value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Returns a copy of the values of this list.
+     */
+    public synchronized int[] toIntArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.checkIndex(index);
+        return new Element(index);
+    }
+
+    @Override
+    void store(int index, Tag tag) {
+        this.values[index] = ((TagInt) tag).getValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, grow(this.values.length, capacity));
+        }
+    }
+
+    @Override
+    void writeValues(DataOutput output) throws IOException {
+        BulkIo.writeInts(output, this.values, this.size);
+    }
+
+    @Override
+    void readValues(DataInput input, int length) throws IOException {
+        int[] newValues = new int[length];
+        BulkIo.readInts(input, newValues, length);
+        this.values = newValues;
+        this.size = length;
+    }
+
+    @Override
+    public TagIntList clone() {
+        return new TagIntList(this.toIntArray());
+    }
+
+    /**
+     * Element tag that reads and writes the value at its index of this list.
+     */
+    private final class Element extends TagInt {
+        private final int index;
+
+        Element(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public int getValue() {
+            return TagIntList.this.getInt(this.index);
+        }
+
+        @Override
+        public void setValue(int value) {
+            TagIntList.this.setInt(this.index, value);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * List tag that keeps the serialized form of its elements and only decodes them when the list is first accessed. A
+ * list that was never accessed is serialized by copying those bytes.
+ * <p/>
+ * Lazy lists are created by {@link NBT#deserialize(java.nio.ByteBuffer, java.util.Set)} and behave exactly like the
+ * list they were read from.
+ */
+public final class TagLazyList extends TagList {
+    /**
+     * Element type, length and elements as they were read, null once decoded.
+     */
+    private volatile byte[] raw;
+
+    TagLazyList(byte[] raw) {
+        super(null, false);
+        this.raw = raw;
+    }
+
+    /**
+     * Returns whether the elements of this list were decoded.
+     */
+    public boolean isDecoded() {
+        return this.raw == null;
+    }
+
+    private void decode() {
+        if (this.raw == null) { return; }
+        synchronized (this) {
+            byte[] raw = this.raw;
+            if (raw == null) { return; }
+            try {
+                super.deserialize(new ByteBufferDataInput(ByteBuffer.wrap(raw)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            this.raw = null;
+        }
+    }
+
+    @Override
+    public List<Tag> getTags() {
+        this.decode();
+        return super.getTags();
+    }
+
+    @Override
+    public synchronized void setTags(List<Tag> tags) {
+        super.setTags(tags);
+        this.raw = null;
+    }
+
+    @Override
+    public synchronized void addTag(Tag tag) {
+        this.decode();
+        super.addTag(tag);
+    }
+
+    @Override
+    public int size() {
+        this.decode();
+        return super.size();
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.decode();
+        return super.getTag(index);
+    }
+
+    @Override
+    public synchronized void setTag(int index, Tag tag) {
+        this.decode();
+        super.setTag(index, tag);
+    }
+
+    @Override
+    synchronized void serialize(DataOutput output) throws IOException {
+        byte[] raw = this.raw;
+        if (raw == null) {
+            super.serialize(output);
+        } else {
+            output.write(raw);
+        }
+    }
+
+    @Override
+    synchronized void deserialize(DataInput input) throws IOException {
+        super.deserialize(input);
+        this.raw = null;
+    }
+
+    @Override
+    public TagList clone() {
+        byte[] raw = this.raw;
+        return raw == null ? super.clone() : new TagLazyList(raw);
+    }
+}
@@ -8,15 +8,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import lombok.Data;
-import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 /**
  * List tag.
+ * <p/>
+ * Lists of numeric primitives that are read from NBT data are represented by the array-backed subclasses
+ * {@link TagByteList}, {@link TagShortList}, {@link TagIntList}, {@link TagLongList}, {@link TagFloatList} and
+ * {@link TagDoubleList}. Lists are equal if they contain equal tags, regardless of their class.
  */
-@Data
-@EqualsAndHashCode(callSuper = false)
-public final class TagList extends TagStructure {
+@ToString
+public class TagList extends TagStructure {
     private List<Tag> tags;
 
     public TagList() {
@@ -32,6 +34,13 @@ public final class TagList extends TagStructure {
         this(Arrays.asList(initialValues));
     }
 
+    /**
+     * Constructor for subclasses that store their elements themselves.
+     */
+    TagList(List<Tag> tags, boolean copy) {
+        this.tags = copy ? Lists.newArrayList(tags) : tags;
+    }
+
     static boolean checkListIntegrity(Iterable<? extends Tag> tags) {
         TagType type = null;
         for (Tag tag : tags) {
@@ -47,6 +56,46 @@ public final class TagList extends TagStructure {
         return true;
     }
 
+    /**
+     * Read a list from the given input, choosing an array-backed list for non-empty lists of numeric elements.
+     */
+    static TagList read(DataInput input) throws IOException {
+        byte typeId = input.readByte();
+        int length = input.readInt();
+        if (typeId == 0 || length <= 0) {
+            // empty lists are written with an arbitrary element type and may be filled with any type
+            TagList list = new TagList();
+            list.readList(TagType.BYTE, length, input);
+            return list;
+        }
+        TagType type = TagType.forId(typeId);
+        TagList list;
+        switch (type) {
+        case BYTE:
+            list = new TagByteList();
+            break;
+        case SHORT:
+            list = new TagShortList();
+            break;
+        case INT:
+            list = new TagIntList();
+            break;
+        case LONG:
+            list = new TagLongList();
+            break;
+        case FLOAT:
+            list = new TagFloatList();
+            break;
+        case DOUBLE:
+            list = new TagDoubleList();
+            break;
+        default:
+            list = new TagList();
+        }
+        list.readList(type, length, input);
+        return list;
+    }
+
     /**
      * Replace contents with the given tags.
      */
@@ -67,7 +116,7 @@ public final class TagList extends TagStructure {
      */
     @SuppressWarnings("unchecked")
     public <T> List<T> getTagsChecked(Class<T> type) {
-        return Collections.checkedList(new ArrayList(tags), type);
+        return Collections.checkedList(new ArrayList(this.getTags()), type);
     }
 
     /**
@@ -77,6 +126,86 @@ public final class TagList extends TagStructure {
         this.tags.add(tag);
     }
 
+    /**
+     * Returns the amount of tags in this list.
+     */
+    public int size() {
+        return this.tags.size();
+    }
+
+    /**
+     * Returns the tag at the given index.
+     */
+    public Tag getTag(int index) {
+        return this.tags.get(index);
+    }
+
+    /**
+     * Replace the tag at the given index.
+     */
+    public synchronized void setTag(int index, Tag tag) {
+        this.tags.set(index, tag);
+    }
+
+    /**
+     * Return the byte value of the tag at the given index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public byte getByte(int index) {
+        return this.getTag(index).getByte();
+    }
+
+    /**
+     * Return the short value of the tag at the given index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public short getShort(int index) {
+        return this.getTag(index).getShort();
+    }
+
+    /**
+     * Return the int value of the tag at the given index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public int getInt(int index) {
+        return this.getTag(index).getInt();
+    }
+
+    /**
+     * Return the long value of the tag at the given index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public long getLong(int index) {
+        return this.getTag(index).getLong();
+    }
+
+    /**
+     * Return the float value of the tag at the given index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public float getFloat(int index) {
+        return this.getTag(index).getFloat();
+    }
+
+    /**
+     * Return the double value of the tag at the given index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not numeric.
+     */
+    public double getDouble(int index) {
+        return this.getTag(index).getDouble();
+    }
+
+    @Override
+    public TagType getType() {
+        return TagType.LIST;
+    }
+
     @Override
     synchronized void serialize(DataOutput output) throws IOException {
         List<Tag> currentTags = this.getTags();
@@ -95,16 +224,30 @@ public final class TagList extends TagStructure {
     void deserialize(DataInput input) throws IOException {
         byte typeId = input.readByte();
         TagType type = typeId == 0 ? TagType.BYTE : TagType.forId(typeId);
-        int length = input.readInt();
+        this.readList(type, input.readInt(), input);
+    }
+
+    /**
+     * Read the elements of a list whose header was already read.
+     */
+    void readList(TagType type, int length, DataInput input) throws IOException {
         List<Tag> newTags = Lists.newArrayListWithCapacity(length);
         for (int i = 0; i < length; i++) {
-            Tag tag = type.newInstance();
-            tag.deserialize(input);
-            newTags.add(tag);
+            newTags.add(type.read(input));
         }
         this.tags = newTags;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof TagList && this.getTags().equals(((TagList) o).getTags());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.getTags().hashCode();
+    }
+
     /**
      * Clone this TagList.
      */
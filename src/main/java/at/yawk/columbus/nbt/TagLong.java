@@ -16,9 +16,14 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 @AllArgsConstructor
-public final class TagLong extends TagValue {
+public class TagLong extends TagValue {
     private long value;
     
+    @Override
+    public TagType getType() {
+        return TagType.LONG;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.writeLong(this.getValue());
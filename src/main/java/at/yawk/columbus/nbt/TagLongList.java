@@ -0,0 +1,113 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * List of long values backed by a long array.
+ */
+public final class TagLongList extends TagPrimitiveList {
+    private long[] values;
+
+    public TagLongList() {
+        this.values = new long[0];
+    }
+
+    public TagLongList(long... initialValues) {
+        this.values = initialValues.clone();
+        this.size = initialValues.length;
+    }
+
+    @Override
+    TagType getElementType() {
+        return TagType.LONG;
+    }
+
+    @Override
+    public long getLong(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Replace the value at the given index.
+     */
+    public synchronized void setLong(int index, long value) {
+        this.checkIndex(index);
+        this.values[index] = value;
+    }
+
+    /**
+     * Append a long value.
+     */
+    public synchronized void addLong(long value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Returns a copy of the values of this list.
+     */
+    public synchronized long[] toLongArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.checkIndex(index);
+        return new Element(index);
+    }
+
+    @Override
+    void store(int index, Tag tag) {
+        this.values[index] = ((TagLong) tag).getValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, grow(this.values.length, capacity));
+        }
+    }
+
+    @Override
+    void writeValues(DataOutput output) throws IOException {
+        BulkIo.writeLongs(output, this.values, this.size);
+    }
+
+    @Override
+    void readValues(DataInput input, int length) throws IOException {
+        long[] newValues = new long[length];
+        BulkIo.readLongs(input, newValues, length);
+        this.values = newValues;
+        this.size = length;
+    }
+
+    @Override
+    public TagLongList clone() {
+        return new TagLongList(this.toLongArray());
+    }
+
+    /**
+     * Element tag that reads and writes the value at its index of this list.
+     */
+    private final class Element extends TagLong {
+        private final int index;
+
+        Element(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public long getValue() {
+            return TagLongList.this.getLong(this.index);
+        }
+
+        @Override
+        public void setValue(long value) {
+            TagLongList.this.setLong(this.index, value);
+        }
+    }
+}
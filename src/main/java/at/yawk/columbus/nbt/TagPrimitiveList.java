@@ -0,0 +1,121 @@
+package at.yawk.columbus.nbt;
+
+import com.google.common.base.Preconditions;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Base class of the list tags that store numeric elements in a primitive array instead of one tag per element.
+ * <p/>
+ * The tag accessors of {@link TagList} are still supported. They create a new tag for every element they return, which
+ * reads and writes the value in the array. Only tags of the element type may be added.
+ */
+abstract class TagPrimitiveList extends TagList {
+    /**
+     * Amount of elements in the array that are part of this list.
+     */
+    int size = 0;
+
+    TagPrimitiveList() {
+        super(null, false);
+    }
+
+    /**
+     * The type of the elements of this list.
+     */
+    abstract TagType getElementType();
+
+    /**
+     * Store the value of the given tag at the given index without checking the index.
+     *
+     * @throws java.lang.ClassCastException if the tag is not of the element type.
+     */
+    abstract void store(int index, Tag tag);
+
+    /**
+     * Grow the array to hold at least the given amount of elements.
+     */
+    abstract void ensureCapacity(int capacity);
+
+    abstract void writeValues(DataOutput output) throws IOException;
+
+    /**
+     * Replace the contents with the given amount of values read from the input.
+     */
+    abstract void readValues(DataInput input, int length) throws IOException;
+
+    void checkIndex(int index) {
+        Preconditions.checkElementIndex(index, this.size);
+    }
+
+    /**
+     * Returns the capacity to grow to when at least the given capacity is needed.
+     */
+    static int grow(int current, int needed) {
+        return Math.max(needed, current + (current >> 1) + 4);
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns an unmodifiable view of this list that creates a new tag for every access. Changing the value of such a
+     * tag changes the element of this list.
+     */
+    @Override
+    public List<Tag> getTags() {
+        return new AbstractList<Tag>() {
+            @Override
+            public Tag get(int index) {
+                return TagPrimitiveList.this.getTag(index);
+            }
+
+            @Override
+            public int size() {
+                return TagPrimitiveList.this.size();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void setTags(List<Tag> tags) {
+        this.ensureCapacity(tags.size());
+        for (int i = 0; i < tags.size(); i++) {
+            this.store(i, tags.get(i));
+        }
+        this.size = tags.size();
+    }
+
+    @Override
+    public synchronized void addTag(Tag tag) {
+        this.ensureCapacity(this.size + 1);
+        this.store(this.size, tag);
+        this.size++;
+    }
+
+    @Override
+    public synchronized void setTag(int index, Tag tag) {
+        this.checkIndex(index);
+        this.store(index, tag);
+    }
+
+    @Override
+    synchronized void serialize(DataOutput output) throws IOException {
+        output.write(this.getElementType().getId());
+        output.writeInt(this.size);
+        this.writeValues(output);
+    }
+
+    @Override
+    void readList(TagType type, int length, DataInput input) throws IOException {
+        if (type != this.getElementType()) {
+            throw new IOException("Cannot read list of " + type + " into list of " + this.getElementType());
+        }
+        this.readValues(input, length);
+    }
+}
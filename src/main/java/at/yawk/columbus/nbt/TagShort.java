@@ -16,9 +16,14 @@ import lombok.NoArgsConstructor;
 @EqualsAndHashCode(callSuper = false)
 @NoArgsConstructor
 @AllArgsConstructor
-public final class TagShort extends TagValue {
+public class TagShort extends TagValue {
     private short value;
     
+    @Override
+    public TagType getType() {
+        return TagType.SHORT;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.writeShort(this.getValue());
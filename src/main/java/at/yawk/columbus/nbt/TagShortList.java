@@ -0,0 +1,113 @@
+package at.yawk.columbus.nbt;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * List of short values backed by a short array.
+ */
+public final class TagShortList extends TagPrimitiveList {
+    private short[] values;
+
+    public TagShortList() {
+        this.values = new short[0];
+    }
+
+    public TagShortList(short... initialValues) {
+        this.values = initialValues.clone();
+        this.size = initialValues.length;
+    }
+
+    @Override
+    TagType getElementType() {
+        return TagType.SHORT;
+    }
+
+    @Override
+    public short getShort(int index) {
+        this.checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Replace the value at the given index.
+     */
+    public synchronized void setShort(int index, short value) {
+        this.checkIndex(index);
+        this.values[index] = value;
+    }
+
+    /**
+     * Append a short value.
+     */
+    public synchronized void addShort(short value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Returns a copy of the values of this list.
+     */
+    public synchronized short[] toShortArray() {
+        return Arrays.copyOf(this.values, this.size);
+    }
+
+    @Override
+    public Tag getTag(int index) {
+        this.checkIndex(index);
+        return new Element(index);
+    }
+
+    @Override
+    void store(int index, Tag tag) {
+        this.values[index] = ((TagShort) tag).getValue();
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > this.values.length) {
+            this.values = Arrays.copyOf(this.values, grow(this.values.length, capacity));
+        }
+    }
+
+    @Override
+    void writeValues(DataOutput output) throws IOException {
+        BulkIo.writeShorts(output, this.values, this.size);
+    }
+
+    @Override
+    void readValues(DataInput input, int length) throws IOException {
+        short[] newValues = new short[length];
+        BulkIo.readShorts(input, newValues, length);
+        this.values = newValues;
+        this.size = length;
+    }
+
+    @Override
+    public TagShortList clone() {
+        return new TagShortList(this.toShortArray());
+    }
+
+    /**
+     * Element tag that reads and writes the value at its index of this list.
+     */
+    private final class Element extends TagShort {
+        private final int index;
+
+        Element(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public short getValue() {
+            return TagShortList.this.getShort(this.index);
+        }
+
+        @Override
+        public void setValue(short value) {
+            TagShortList.this.setShort(this.index, value);
+        }
+    }
+}
@@ -16,6 +16,11 @@ import lombok.NoArgsConstructor;
 public final class TagString extends TagValue {
     private String value;
     
+    @Override
+    public TagType getType() {
+        return TagType.STRING;
+    }
+
     @Override
     void serialize(DataOutput output) throws IOException {
         output.writeUTF(this.getValue());
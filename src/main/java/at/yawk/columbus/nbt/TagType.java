@@ -1,7 +1,8 @@
 package at.yawk.columbus.nbt;
 
-import com.google.common.collect.Maps;
-import java.util.Map;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.function.Supplier;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -15,73 +16,98 @@ public enum TagType {
     /**
      * @see at.yawk.columbus.nbt.TagByte
      */
-    BYTE(1, TagByte.class),
+    BYTE(1, TagByte::new),
     /**
      * @see at.yawk.columbus.nbt.TagShort
      */
-    SHORT(2, TagShort.class),
+    SHORT(2, TagShort::new),
     /**
      * @see at.yawk.columbus.nbt.TagInt
      */
-    INT(3, TagInt.class),
+    INT(3, TagInt::new),
     /**
      * @see at.yawk.columbus.nbt.TagLong
      */
-    LONG(4, TagLong.class),
+    LONG(4, TagLong::new),
     /**
      * @see at.yawk.columbus.nbt.TagFloat
      */
-    FLOAT(5, TagFloat.class),
+    FLOAT(5, TagFloat::new),
     /**
      * @see at.yawk.columbus.nbt.TagDouble
      */
-    DOUBLE(6, TagDouble.class),
+    DOUBLE(6, TagDouble::new),
     /**
      * @see at.yawk.columbus.nbt.TagArrayByte
      */
-    ARRAY_BYTE(7, TagArrayByte.class),
+    ARRAY_BYTE(7, TagArrayByte::new),
     /**
      * @see at.yawk.columbus.nbt.TagString
      */
-    STRING(8, TagString.class),
+    STRING(8, TagString::new),
     /**
      * @see at.yawk.columbus.nbt.TagList
      */
-    LIST(9, TagList.class),
+    LIST(9, TagList::new),
     /**
      * @see at.yawk.columbus.nbt.TagCompound
      */
-    COMPOUND(10, TagCompound.class),
+    COMPOUND(10, TagCompound::new),
     /**
      * @see at.yawk.columbus.nbt.TagArrayInt
      */
-    ARRAY_INT(11, TagArrayInt.class);
+    ARRAY_INT(11, TagArrayInt::new);
 
     private static final TagType[] tagsById = new TagType[12];
-    private static final Map<Class<? extends Tag>, TagType> tagsByClass = Maps.newHashMap();
 
     static {
         for (TagType tagType : values()) {
             tagsById[tagType.getId()] = tagType;
-            tagsByClass.put(tagType.getTagClass(), tagType);
         }
     }
 
     private final byte id;
-    private final Class<? extends Tag> tagClass;
+    /**
+     * Creates an empty tag of this type.
+     */
+    private final Supplier<Tag> factory;
 
-    TagType(int id, Class<? extends Tag> tagClass) {
-        assert tagClass != null;
+    TagType(int id, Supplier<Tag> factory) {
+        assert factory != null;
 
         this.id = (byte) id;
-        this.tagClass = tagClass;
+        this.factory = factory;
     }
 
     Tag newInstance() {
-        try {
-            return this.getTagClass().newInstance();
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new RuntimeException(e);
+        return this.getFactory().get();
+    }
+
+    /**
+     * Read a tag of this type from the given input.
+     */
+    Tag read(DataInput input) throws IOException {
+        switch (this) {
+        case BYTE:
+            return new TagByte(input.readByte());
+        case SHORT:
+            return new TagShort(input.readShort());
+        case INT:
+            return new TagInt(input.readInt());
+        case LONG:
+            return new TagLong(input.readLong());
+        case FLOAT:
+            return new TagFloat(input.readFloat());
+        case DOUBLE:
+            return new TagDouble(input.readDouble());
+        case STRING:
+            return new TagString(input.readUTF());
+        case LIST:
+            return TagList.read(input);
+        default:
+            Tag tag = this.newInstance();
+            tag.deserialize(input);
+            return tag;
         }
     }
 
@@ -90,8 +116,4 @@ public enum TagType {
         assert id < 12 : id;
         return tagsById[id];
     }
-
-    static TagType forClass(Class<? extends Tag> type) {
-        return tagsByClass.get(type);
-    }
 }
@@ -0,0 +1,66 @@
+package at.yawk.columbus;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BlockStorageTest {
+    private static void assertRoundTrip(int distinct) {
+        Random random = new Random(distinct);
+        char[] expected = new char[BlockStorage.LENGTH];
+        BlockStorage storage = new PalettedBlockStorage();
+        for (int i = 0; i < BlockStorage.LENGTH; i++) {
+            expected[i] = (char) (random.nextInt(distinct) * 37 % 0x10000);
+            storage = storage.set(i, expected[i]);
+        }
+        for (int i = 0; i < BlockStorage.LENGTH; i++) {
+            Assert.assertEquals(expected[i], storage.get(i));
+        }
+        BlockStorage copy = BlockStorage.of(expected);
+        for (int i = 0; i < BlockStorage.LENGTH; i++) {
+            Assert.assertEquals(expected[i], copy.get(i));
+        }
+        Assert.assertEquals(distinct > PalettedBlockStorage.MAX_PALETTE_SIZE, storage instanceof DenseBlockStorage);
+    }
+
+    @Test
+    public void testWidening() {
+        for (int distinct : new int[]{ 1, 2, 3, 5, 17, 256, 257, 1000 }) {
+            assertRoundTrip(distinct);
+        }
+    }
+
+    @Test
+    public void testEmptyAndAdd() {
+        BlockStorage storage = new PalettedBlockStorage();
+        Assert.assertTrue(storage.isEmpty());
+        Assert.assertFalse(storage.hasAdd());
+        storage = storage.set(5, 0x1005);
+        Assert.assertFalse(storage.isEmpty());
+        Assert.assertTrue(storage.hasAdd());
+        storage = storage.set(5, 3);
+        Assert.assertTrue(storage.isEmpty());
+        Assert.assertFalse(storage.hasAdd());
+    }
+
+    @Test
+    public void testUniformCopyOnWrite() {
+        BlockStorage air = UniformBlockStorage.AIR;
+        Assert.assertSame(air, air.set(10, 0));
+        BlockStorage written = air.set(10, 0x15);
+        Assert.assertNotSame(air, written);
+        Assert.assertEquals(0, air.get(10));
+        Assert.assertEquals(0x15, written.get(10));
+        Assert.assertEquals(0, written.get(11));
+
+        BlockStorage stone = UniformBlockStorage.of(0x10);
+        BlockStorage copy = stone.set(0, 0x20);
+        Assert.assertEquals(0x20, copy.get(0));
+        Assert.assertEquals(0x10, copy.get(1));
+
+        char[] states = new char[BlockStorage.LENGTH];
+        Arrays.fill(states, (char) 0x10);
+        Assert.assertTrue(BlockStorage.of(states) instanceof UniformBlockStorage);
+    }
+}
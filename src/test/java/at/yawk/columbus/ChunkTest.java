@@ -0,0 +1,139 @@
+package at.yawk.columbus;
+
+import at.yawk.columbus.nbt.NBT;
+import at.yawk.columbus.nbt.NamedTag;
+import at.yawk.columbus.nbt.TagCompound;
+import at.yawk.columbus.nbt.TagDouble;
+import at.yawk.columbus.nbt.TagLazyList;
+import at.yawk.columbus.nbt.TagList;
+import at.yawk.columbus.nbt.TagString;
+import java.nio.ByteBuffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkTest {
+    private Chunk sampleChunk() {
+        World world = new World(new WorldProperties(128));
+        Chunk chunk = world.getChunkOrCreate(3, -7);
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                chunk.setBlock(x, 0, z, (short) 7, (byte) 0);
+                chunk.setBlock(x, 1 + (x ^ z), z, (short) (x * 16 + z), (byte) (x & 0xf));
+            }
+        }
+        chunk.getChunkSection(2).setLightBlock(4, 5, 6, (byte) 13);
+        chunk.getChunkSection(2).setLightSky(4, 5, 7, (byte) 9);
+        chunk.setLastUpdated(1234);
+        chunk.setInhabitatedTime(5678);
+        chunk.getEntities().add(new TagCompound(new NamedTag("id", new TagString("Pig")),
+                                                new NamedTag("Pos", new TagList(new TagDouble(1),
+                                                                                new TagDouble(2),
+                                                                                new TagDouble(3)))));
+        return chunk;
+    }
+
+    @Test
+    public void testWriteToMatchesSerialize() {
+        Chunk chunk = this.sampleChunk();
+        Assert.assertArrayEquals(NBT.serializeArray(chunk.serialize()), chunk.serializeArray());
+    }
+
+    @Test
+    public void testWriteToMatchesSerializeWithAddAndBiomes() {
+        Chunk chunk = this.sampleChunk();
+        chunk.setBlock(1, 100, 1, (short) 0xabc, (byte) 3);
+        chunk.setBiome(4, 4, Biome.JUNGLE);
+        Assert.assertArrayEquals(NBT.serializeArray(chunk.serialize()), chunk.serializeArray());
+    }
+
+    @Test
+    public void testWriteToMatchesSerializeEmpty() {
+        Chunk chunk = new World(new WorldProperties(256)).getChunkOrCreate(0, 0);
+        Assert.assertArrayEquals(NBT.serializeArray(chunk.serialize()), chunk.serializeArray());
+    }
+
+    @Test
+    public void testDirtyTracking() {
+        Chunk chunk = Chunk.deserialize(new World(new WorldProperties(128)), this.sampleChunk().serialize());
+        Assert.assertFalse(chunk.isDirty());
+
+        chunk.getChunkSection(3).setBlock(0, 0, 0, (short) 1, (byte) 0);
+        Assert.assertTrue(chunk.isDirty());
+        chunk.clearDirty();
+
+        chunk.getEntities().iterator().next();
+        Assert.assertFalse(chunk.isDirty());
+        chunk.getEntities().removeIf(entity -> true);
+        Assert.assertTrue(chunk.isDirty());
+        chunk.clearDirty();
+
+        chunk.getTileTicks().add(new TagCompound());
+        Assert.assertTrue(chunk.isDirty());
+        chunk.clearDirty();
+
+        chunk.setPopulated(false);
+        Assert.assertTrue(chunk.isDirty());
+    }
+
+    @Test
+    public void testHeightMap() {
+        Lighter lighter = new Lighter();
+        lighter.putDefaultBlockLightData();
+        Chunk chunk = new World(new WorldProperties(64)).getChunkOrCreate(0, 0);
+        chunk.setBlock(1, 40, 2, (short) 1, (byte) 0);
+        chunk.setBlock(1, 45, 2, (short) 20, (byte) 0); // glass is transparent
+        chunk.setBlock(3, 5, 3, (short) 1, (byte) 0);
+        chunk.calculateHeightMap(lighter);
+        Assert.assertEquals(41, chunk.getHeight(1, 2));
+        Assert.assertEquals(6, chunk.getHeight(3, 3));
+        Assert.assertEquals(0, chunk.getHeight(2, 1));
+
+        chunk.setBlock(1, 40, 2, (short) 0, (byte) 0);
+        chunk.setBlock(1, 45, 2, (short) 0, (byte) 0);
+        chunk.calculateHeightMap(lighter);
+        Assert.assertEquals(0, chunk.getHeight(1, 2));
+        Assert.assertTrue(chunk.getChunkSection(2).isEmpty());
+
+        chunk.getChunkSection(3).fill((short) 1, (byte) 0);
+        chunk.calculateHeightMap(lighter);
+        Assert.assertEquals(64, chunk.getHeight(1, 2));
+        Assert.assertFalse(chunk.getChunkSection(3).isEmpty());
+    }
+
+    @Test
+    public void testEntityPosition() throws Exception {
+        Chunk source = this.sampleChunk();
+        Chunk chunk = Chunk.deserialize(source.getWorld(), NBT.deserializeArray(source.serializeArray()));
+        for (TagCompound entity : new TagCompound[]{ source.getEntities().iterator().next(),
+                                                     chunk.getEntities().iterator().next() }) {
+            Entities.setEntityY(entity, 20);
+            Entities.setEntityZ(entity, 30);
+            Assert.assertEquals(1, Entities.getEntityX(entity), 0);
+            Assert.assertEquals(20, Entities.getEntityY(entity), 0);
+            Assert.assertEquals(30, Entities.getEntityZ(entity), 0);
+        }
+    }
+
+    @Test
+    public void testLazyEntities() throws Exception {
+        Chunk source = this.sampleChunk();
+        source.getTileTicks().add(new TagCompound(new NamedTag("i", new TagString("minecraft:water"))));
+        byte[] data = source.serializeArray();
+
+        Chunk chunk = Chunk.deserialize(source.getWorld(), NBT.deserialize(ByteBuffer.wrap(data), Chunk.LAZY_LISTS));
+        TagCompound level = chunk.serialize().getValue().asCompound().getTag("Level").asCompound();
+        Assert.assertFalse(((TagLazyList) level.getTag("Entities")).isDecoded());
+        Assert.assertArrayEquals(data, chunk.serializeArray());
+        level.getTag("Entities").asList().addTag(new TagCompound());
+        Assert.assertArrayEquals(data, chunk.serializeArray());
+        Assert.assertArrayEquals(data, NBT.serializeArray(chunk.serialize()));
+
+        Assert.assertEquals(source.getEntities().iterator().next(), chunk.getEntities().iterator().next());
+        Assert.assertEquals(1, chunk.getTileTicks().size());
+        Assert.assertFalse(chunk.isDirty());
+        Assert.assertArrayEquals(data, chunk.serializeArray());
+        chunk.getTileEntities().add(new TagCompound());
+        Assert.assertEquals(1, Chunk.deserialize(source.getWorld(), NBT.deserializeArray(chunk.serializeArray()))
+                                    .getTileEntities().size());
+    }
+}
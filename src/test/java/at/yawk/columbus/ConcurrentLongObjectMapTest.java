@@ -0,0 +1,69 @@
+package at.yawk.columbus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ConcurrentLongObjectMapTest {
+    @Test
+    public void testPutGetRemove() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        for (long i = -5000; i < 5000; i++) {
+            Assert.assertNull(map.put(i << 32 | i & 0xffffffffL, Long.toString(i)));
+        }
+        Assert.assertEquals(10000, map.size());
+        for (long i = -5000; i < 5000; i += 2) {
+            Assert.assertEquals(Long.toString(i), map.remove(i << 32 | i & 0xffffffffL));
+        }
+        Assert.assertEquals(5000, map.size());
+        Assert.assertEquals(5000, map.values().size());
+        for (long i = -5000; i < 5000; i++) {
+            String expected = (i & 1) == 0 ? null : Long.toString(i);
+            Assert.assertEquals(expected, map.get(i << 32 | i & 0xffffffffL));
+        }
+        Assert.assertEquals("1", map.put(1L << 32 | 1, "one"));
+        Assert.assertEquals("one", map.putIfAbsent(1L << 32 | 1, "uno"));
+        Assert.assertEquals("one", map.get(1L << 32 | 1));
+    }
+
+    @Test
+    public void testRemovedSlotsAreReused() {
+        ConcurrentLongObjectMap<Long> map = new ConcurrentLongObjectMap<>();
+        for (long i = 0; i < 100000; i++) {
+            map.put(i, i);
+            map.remove(i - 10);
+        }
+        Assert.assertEquals(10, map.size());
+        Assert.assertEquals(99995L, (long) map.get(99995));
+        Assert.assertNull(map.get(5));
+    }
+
+    @Test
+    public void testConcurrentComputeIfAbsent() throws Exception {
+        ConcurrentLongObjectMap<Object> map = new ConcurrentLongObjectMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object[]>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(executor.submit(() -> {
+                    Object[] values = new Object[20000];
+                    for (int i = 0; i < values.length; i++) {
+                        values[i] = map.computeIfAbsent(i * 31L, key -> new Object());
+                    }
+                    return values;
+                }));
+            }
+            Object[] first = results.get(0).get();
+            for (Future<Object[]> result : results) {
+                Assert.assertArrayEquals(first, result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(20000, map.size());
+    }
+}
@@ -0,0 +1,96 @@
+package at.yawk.columbus;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LevelFolderTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPrintChanges() throws IOException {
+        World world = new World(new WorldProperties(128));
+        world.getChunkOrCreate(0, 0).setBlock(0, 0, 0, (short) 1, (byte) 0);
+        world.getChunkOrCreate(1, 0).setBlock(0, 0, 0, (short) 2, (byte) 0);
+        world.getChunkOrCreate(40, 0).setBlock(0, 0, 0, (short) 3, (byte) 0);
+        LevelFolder level = new LevelFolder(new Level(), world);
+        Path directory = this.folder.getRoot().toPath();
+        level.print(directory, false);
+        for (Chunk chunk : world.getAllChunks()) {
+            Assert.assertFalse(chunk.isDirty());
+        }
+
+        Path unchanged = directory.resolve("region/r.1.0.mca");
+        byte[] unchangedBefore = Files.readAllBytes(unchanged);
+
+        world.getChunkOrCreate(1, 0).setBlock(0, 0, 0, (short) 4, (byte) 0);
+        world.getChunkOrCreate(-1, 0).setBlock(0, 0, 0, (short) 5, (byte) 0);
+        level.printChanges(directory);
+        Assert.assertFalse(world.getChunkIfExists(1, 0).isDirty());
+        Assert.assertFalse(world.getChunkIfExists(-1, 0).isDirty());
+        Assert.assertArrayEquals(unchangedBefore, Files.readAllBytes(unchanged));
+
+        LevelFolder read = new LevelFolder();
+        read.read(directory);
+        World readWorld = read.getWorldIfExists(LevelFolder.WORLD_REGULAR);
+        Assert.assertEquals(4, readWorld.getAllChunks().size());
+        Assert.assertEquals(1, readWorld.getChunkIfExists(0, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertEquals(4, readWorld.getChunkIfExists(1, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertEquals(3, readWorld.getChunkIfExists(40, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertEquals(5, readWorld.getChunkIfExists(-1, 0).getChunkSection(0).getBlockId(0, 0, 0));
+    }
+
+    @Test
+    public void testPrintCopyKeepsChanges() throws IOException {
+        World world = new World(new WorldProperties(128));
+        world.getChunkOrCreate(0, 0).setBlock(0, 0, 0, (short) 1, (byte) 0);
+        Path original = this.folder.newFolder("original").toPath();
+        new LevelFolder(new Level(), world).print(original);
+
+        LevelFolder level = new LevelFolder();
+        level.read(original);
+        World readWorld = level.getWorldIfExists(LevelFolder.WORLD_REGULAR);
+        readWorld.getChunkIfExists(0, 0).setBlock(0, 0, 0, (short) 2, (byte) 0);
+        level.print(this.folder.newFolder("backup").toPath());
+        Assert.assertTrue(readWorld.getChunkIfExists(0, 0).isDirty());
+        level.printChanges(original);
+
+        LevelFolder reread = new LevelFolder();
+        reread.read(original);
+        Assert.assertEquals(2, reread.getWorldIfExists(LevelFolder.WORLD_REGULAR)
+                                     .getChunkIfExists(0, 0).getChunkSection(0).getBlockId(0, 0, 0));
+    }
+
+    @Test
+    public void testPrintLazy() throws IOException {
+        World world = new World(new WorldProperties(128));
+        world.getChunkOrCreate(0, 0).setBlock(0, 0, 0, (short) 1, (byte) 0);
+        world.getChunkOrCreate(40, 0).setBlock(0, 0, 0, (short) 2, (byte) 0);
+        Path source = this.folder.newFolder("source").toPath();
+        new LevelFolder(new Level(), world).print(source);
+
+        LevelFolder lazy = new LevelFolder();
+        lazy.readLazy(source, 4);
+        World lazyWorld = lazy.getWorldIfExists(LevelFolder.WORLD_REGULAR);
+        lazyWorld.getChunkOrCreate(-1, 0).setBlock(0, 0, 0, (short) 3, (byte) 0);
+        try {
+            lazy.print(source);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {}
+
+        Path copy = this.folder.newFolder("copy").toPath();
+        lazy.print(copy);
+        lazy.close();
+        LevelFolder read = new LevelFolder();
+        read.read(copy);
+        World readWorld = read.getWorldIfExists(LevelFolder.WORLD_REGULAR);
+        Assert.assertEquals(3, readWorld.getAllChunks().size());
+        Assert.assertEquals(1, readWorld.getChunkIfExists(0, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertEquals(2, readWorld.getChunkIfExists(40, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertEquals(3, readWorld.getChunkIfExists(-1, 0).getChunkSection(0).getBlockId(0, 0, 0));
+    }
+}
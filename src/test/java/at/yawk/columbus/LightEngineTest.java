@@ -0,0 +1,203 @@
+package at.yawk.columbus;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LightEngineTest {
+    private static final short STONE = 1;
+    private static final short GLOWSTONE = 89;
+    private static final short WATER = 9;
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Lighter lighter() {
+        Lighter lighter = new Lighter();
+        lighter.putDefaultBlockLightData();
+        return lighter;
+    }
+
+    @Test
+    public void testBlockLightCrossesChunks() {
+        World world = new World(new WorldProperties(64));
+        world.getChunkOrCreate(0, 0).setBlock(15, 20, 0, GLOWSTONE, (byte) 0);
+        world.getChunkOrCreate(1, 0);
+        world.getChunkOrCreate(0, -1);
+        world.relight(lighter());
+
+        Assert.assertEquals(15, world.getChunkIfExists(0, 0).getChunkSection(1).getLightBlock(15, 20, 0));
+        Assert.assertEquals(14, world.getChunkIfExists(1, 0).getChunkSection(1).getLightBlock(16, 20, 0));
+        Assert.assertEquals(13, world.getChunkIfExists(0, -1).getChunkSection(1).getLightBlock(14, 20, -1));
+        Assert.assertEquals(10, world.getChunkIfExists(1, 0).getChunkSection(1).getLightBlock(18, 22, 0));
+        Assert.assertEquals(1, world.getChunkIfExists(0, 0).getChunkSection(1).getLightBlock(1, 20, 0));
+        Assert.assertEquals(0, world.getChunkIfExists(0, 0).getChunkSection(1).getLightBlock(0, 20, 0));
+    }
+
+    @Test
+    public void testLazyWorldKeepsLight() throws IOException {
+        World source = new World(new WorldProperties(64));
+        source.getChunkOrCreate(0, 0);
+        source.getChunkOrCreate(1, 0);
+        Path directory = this.folder.getRoot().toPath();
+        try (OutputStream o = Files.newOutputStream(directory.resolve("r.0.0.mca"))) {
+            source.writeRegionFile(0, 0, new DataOutputStream(o));
+        }
+
+        // lighting must not load the neighbour, which would evict the chunk being lit
+        try (World lazy = new World(new WorldProperties(64), new RegionFolder(directory), 1)) {
+            lazy.getChunkIfExists(0, 0).setBlock(15, 10, 0, GLOWSTONE, (byte) 0);
+            lazy.relight(lighter());
+        }
+        try (World lazy = new World(new WorldProperties(64), new RegionFolder(directory), 1)) {
+            Assert.assertEquals(15, lazy.getChunkIfExists(0, 0).getChunkSection(0).getLightBlock(15, 10, 0));
+        }
+    }
+
+    @Test
+    public void testSkyLight() {
+        World world = new World(new WorldProperties(64));
+        Chunk chunk = world.getChunkOrCreate(0, 0);
+        // floor at y = 10, roof at y = 20 over x < 8, water column at x = 12
+        for (int x = 0; x < 16; x++) {
+            for (int z = 0; z < 16; z++) {
+                chunk.setBlock(x, 10, z, STONE, (byte) 0);
+                if (x < 8) {
+                    chunk.setBlock(x, 20, z, STONE, (byte) 0);
+                }
+            }
+        }
+        for (int y = 11; y < 15; y++) {
+            chunk.setBlock(12, y, 12, WATER, (byte) 0);
+        }
+        Lighter lighter = lighter();
+        world.refreshHeightMap(lighter);
+        world.relight(lighter);
+
+        Assert.assertEquals(15, chunk.getChunkSection(1).getLightSky(10, 21, 5));
+        Assert.assertEquals(15, chunk.getChunkSection(0).getLightSky(10, 11, 5));
+        Assert.assertEquals(15, chunk.getChunkSection(1).getLightSky(5, 21, 5));
+        // under the roof, light comes in sideways from x = 8
+        Assert.assertEquals(14, chunk.getChunkSection(1).getLightSky(7, 19, 5));
+        Assert.assertEquals(10, chunk.getChunkSection(0).getLightSky(3, 15, 5));
+        Assert.assertEquals(0, chunk.getChunkSection(0).getLightSky(3, 5, 5));
+        // water loses 3 levels per block, the column is lit from above and from the sides
+        Assert.assertEquals(12, chunk.getChunkSection(0).getLightSky(12, 14, 12));
+        Assert.assertEquals(12, chunk.getChunkSection(0).getLightSky(12, 11, 12));
+        Assert.assertEquals(15, chunk.getHeight(12, 12));
+    }
+
+    private static World terrain() {
+        return terrain(1);
+    }
+
+    private static World terrain(int radius) {
+        World world = new World(new WorldProperties(64));
+        Random random = new Random(42);
+        for (int cx = -radius; cx <= radius; cx++) {
+            for (int cz = -radius; cz <= radius; cz++) {
+                Chunk chunk = world.getChunkOrCreate(cx, cz);
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        int top = 20 + random.nextInt(4);
+                        for (int y = 0; y < top; y++) {
+                            chunk.setBlock(x, y, z, STONE, (byte) 0);
+                        }
+                    }
+                }
+            }
+        }
+        return world;
+    }
+
+    private static void edit(World world) {
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            int x = random.nextInt(48) - 16;
+            int y = 14 + random.nextInt(16);
+            int z = random.nextInt(48) - 16;
+            short id = new short[]{ 0, STONE, GLOWSTONE, WATER }[random.nextInt(4)];
+            world.getChunkIfExists(x >> 4, z >> 4).setBlock(x, y, z, id, (byte) 0);
+        }
+    }
+
+    @Test
+    public void testIncrementalFillMatchesFullRelight() {
+        Lighter lighter = lighter();
+
+        World incremental = terrain();
+        incremental.refreshHeightMap(lighter);
+        incremental.relight(lighter);
+        incremental.setTrackLightUpdates(true);
+        incremental.getChunkIfExists(0, 0).getChunkSection(1).fill((short) 0, (byte) 0);
+        incremental.getChunkIfExists(1, 0).getChunkSection(2).fill(GLOWSTONE, (byte) 0);
+        incremental.flushLightUpdates(lighter);
+
+        World full = terrain();
+        full.getChunkIfExists(0, 0).getChunkSection(1).fill((short) 0, (byte) 0);
+        full.getChunkIfExists(1, 0).getChunkSection(2).fill(GLOWSTONE, (byte) 0);
+        full.refreshHeightMap(lighter);
+        full.relight(lighter);
+
+        for (Chunk expected : full.getAllChunks()) {
+            Chunk actual = incremental.getChunkIfExists(expected.getChunkX(), expected.getChunkZ());
+            Assert.assertArrayEquals(expected.serializeArray(), actual.serializeArray());
+        }
+    }
+
+    @Test
+    public void testIncrementalMatchesFullRelight() {
+        Lighter lighter = lighter();
+
+        World incremental = terrain();
+        incremental.refreshHeightMap(lighter);
+        incremental.relight(lighter);
+        incremental.setTrackLightUpdates(true);
+        edit(incremental);
+        incremental.flushLightUpdates(lighter);
+
+        World full = terrain();
+        edit(full);
+        full.refreshHeightMap(lighter);
+        full.relight(lighter);
+
+        for (Chunk expected : full.getAllChunks()) {
+            Chunk actual = incremental.getChunkIfExists(expected.getChunkX(), expected.getChunkZ());
+            Assert.assertArrayEquals(expected.serializeArray(), actual.serializeArray());
+        }
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        Lighter lighter = lighter();
+
+        World serial = terrain(4);
+        edit(serial);
+        serial.refreshHeightMap(lighter);
+        serial.relight(lighter);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int tileSize : new int[]{ 2, 3 }) {
+                World parallel = terrain(4);
+                edit(parallel);
+                parallel.refreshHeightMap(lighter);
+                parallel.relight(lighter, pool, tileSize);
+
+                for (Chunk expected : serial.getAllChunks()) {
+                    Chunk actual = parallel.getChunkIfExists(expected.getChunkX(), expected.getChunkZ());
+                    Assert.assertArrayEquals(expected.serializeArray(), actual.serializeArray());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
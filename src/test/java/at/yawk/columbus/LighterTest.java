@@ -0,0 +1,26 @@
+package at.yawk.columbus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LighterTest {
+    @Test
+    public void testFreeze() {
+        Lighter lighter = new Lighter();
+        lighter.putDefaultBlockLightData();
+        LighterTable table = lighter.freeze();
+        Assert.assertSame(table, lighter.freeze());
+        Assert.assertEquals(255, table.opacity(1));
+        Assert.assertEquals(3, table.opacity(9));
+        Assert.assertEquals(0, table.opacity(0));
+        Assert.assertEquals(15, table.emission(89));
+        Assert.assertEquals(0, table.emission(4095));
+
+        lighter.putBlockLightData(4095, 2, 7);
+        LighterTable changed = lighter.freeze();
+        Assert.assertNotSame(table, changed);
+        Assert.assertEquals(0, table.emission(4095));
+        Assert.assertEquals(7, changed.emission(4095));
+        Assert.assertEquals(2, changed.opacity(4095));
+    }
+}
@@ -0,0 +1,46 @@
+package at.yawk.columbus;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NibbleArrayTest {
+    @Test
+    public void testLayoutMatchesHalf() {
+        byte[] unpacked = new byte[64];
+        NibbleArray nibbles = new NibbleArray(unpacked.length);
+        for (int i = 0; i < unpacked.length; i++) {
+            unpacked[i] = (byte) (i * 7 & 0xf);
+            nibbles.set(i, unpacked[i]);
+        }
+        Assert.assertArrayEquals(Util.half(unpacked), nibbles.getData());
+        for (int i = 0; i < unpacked.length; i++) {
+            Assert.assertEquals(unpacked[i], nibbles.get(i));
+        }
+    }
+
+    @Test
+    public void testFill() {
+        NibbleArray nibbles = new NibbleArray(16);
+        nibbles.set(3, 4);
+        nibbles.fill(15);
+        for (int i = 0; i < nibbles.length(); i++) {
+            Assert.assertEquals(15, nibbles.get(i));
+        }
+    }
+
+    @Test
+    public void testUniform() {
+        NibbleArray nibbles = new NibbleArray(16, 15);
+        Assert.assertTrue(nibbles.isUniform());
+        nibbles.set(2, 15);
+        Assert.assertTrue(nibbles.isUniform());
+        nibbles.set(2, 3);
+        Assert.assertFalse(nibbles.isUniform());
+        Assert.assertEquals(3, nibbles.get(2));
+        Assert.assertEquals(15, nibbles.get(3));
+
+        Assert.assertTrue(NibbleArray.copyOf(new byte[]{ 0x77, 0x77 }).isUniform());
+        Assert.assertFalse(NibbleArray.copyOf(new byte[]{ 0x77, 0x17 }).isUniform());
+        Assert.assertFalse(NibbleArray.copyOf(new byte[]{ 0x78, 0x78 }).isUniform());
+    }
+}
@@ -0,0 +1,258 @@
+package at.yawk.columbus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RegionFileTest {
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path writeRegion(World world, int x, int z) throws IOException {
+        Path path = this.folder.newFile("r." + x + "." + z + ".mca").toPath();
+        try (OutputStream o = Files.newOutputStream(path)) {
+            world.writeRegionFile(x, z, new DataOutputStream(o));
+        }
+        return path;
+    }
+
+    @Test
+    public void testReadSingleChunk() throws IOException {
+        World source = new World(new WorldProperties(128));
+        source.getChunkOrCreate(-32, -31).setBlock(1, 2, 3, (short) 5, (byte) 2);
+        source.getChunkOrCreate(-1, -1).setBlock(15, 127, 15, (short) 300, (byte) 15);
+        Path path = this.writeRegion(source, -1, -1);
+
+        World target = new World(new WorldProperties(128));
+        try (RegionFile region = RegionFile.open(path)) {
+            Assert.assertTrue(region.hasChunk(-1, -1));
+            Assert.assertFalse(region.hasChunk(0, 0));
+            Assert.assertNull(target.readChunk(region, 0, 0));
+
+            Chunk chunk = target.readChunk(region, -1, -1);
+            Assert.assertEquals(-1, chunk.getChunkX());
+            Assert.assertEquals(-1, chunk.getChunkZ());
+            Assert.assertEquals(300, chunk.getChunkSection(7).getBlockId(15, 127, 15));
+            Assert.assertEquals(15, chunk.getChunkSection(7).getBlockData(15, 127, 15));
+        }
+        Assert.assertSame(target.getChunkIfExists(-1, -1), target.getAllChunks().get(0));
+        Assert.assertNull(target.getChunkIfExists(-32, -31));
+    }
+
+    @Test
+    public void testReadWholeRegion() throws IOException {
+        World source = new World(new WorldProperties(128));
+        for (int i = 0; i < 32; i++) {
+            source.getChunkOrCreate(32 + i, i).setBlock(i, i, i, (short) (i + 1), (byte) 0);
+        }
+        Path path = this.writeRegion(source, 1, 0);
+
+        World target = new World(new WorldProperties(128));
+        try (RegionFile region = RegionFile.open(path)) {
+            target.readRegionFile(region);
+        }
+        Assert.assertEquals(32, target.getAllChunks().size());
+        for (int i = 0; i < 32; i++) {
+            Assert.assertEquals(i + 1, target.getChunkIfExists(32 + i, i).getChunkSection(i >> 4).getBlockId(i, i, i));
+        }
+    }
+
+    @Test
+    public void testLazyWorld() throws IOException {
+        World source = new World(new WorldProperties(128));
+        for (int i = 0; i < 8; i++) {
+            source.getChunkOrCreate(i, 0).setBlock(0, 0, 0, (short) (i + 1), (byte) 0);
+        }
+        Path directory = this.writeRegion(source, 0, 0).getParent();
+
+        try (World lazy = new World(new WorldProperties(128), new RegionFolder(directory), 2)) {
+            Assert.assertTrue(lazy.getAllChunks().isEmpty());
+            for (int i = 0; i < 8; i++) {
+                Chunk chunk = lazy.getChunkIfExists(i, 0);
+                Assert.assertEquals(i + 1, chunk.getChunkSection(0).getBlockId(0, 0, 0));
+                Assert.assertFalse(chunk.isDirty());
+                chunk.setBlock(0, 0, 0, (short) (i + 10), (byte) 0);
+                Assert.assertTrue(lazy.getAllChunks().size() <= 2);
+            }
+            Assert.assertNull(lazy.getChunkIfExists(8, 0));
+            lazy.getChunkOrCreate(-1, -1).setBlock(0, 0, 0, (short) 42, (byte) 0);
+        }
+
+        try (World lazy = new World(new WorldProperties(128), new RegionFolder(directory), 2)) {
+            for (int i = 0; i < 8; i++) {
+                Assert.assertEquals(i + 10, lazy.getChunkIfExists(i, 0).getChunkSection(0).getBlockId(0, 0, 0));
+            }
+            Assert.assertEquals(42, lazy.getChunkIfExists(-1, -1).getChunkSection(0).getBlockId(0, 0, 0));
+        }
+    }
+
+    @Test
+    public void testLazyWorldEvictionFailure() throws IOException {
+        // region files cannot be created below a regular file
+        Path blocked = this.folder.newFile("blocked").toPath();
+        World lazy = new World(new WorldProperties(128), new RegionFolder(blocked), 1);
+        Chunk chunk = lazy.getChunkOrCreate(0, 0);
+        chunk.setBlock(0, 0, 0, (short) 1, (byte) 0);
+        lazy.getChunkOrCreate(1, 0);
+        Assert.assertSame(chunk, lazy.getChunkIfExists(0, 0));
+        Assert.assertTrue(chunk.isDirty());
+        try {
+            lazy.flush();
+            Assert.fail();
+        } catch (IOException expected) {}
+    }
+
+    @Test
+    public void testWriteReusesSectors() throws IOException {
+        World source = new World(new WorldProperties(128));
+        for (int i = 0; i < 4; i++) {
+            source.getChunkOrCreate(i, 0).setBlock(0, 0, 0, (short) (i + 1), (byte) 0);
+        }
+        Path path = this.writeRegion(source, 0, 0);
+        long size = Files.size(path);
+
+        try (RegionFile region = RegionFile.open(path, true)) {
+            // fits into the old sector
+            source.getChunkOrCreate(1, 0).setBlock(0, 0, 0, (short) 10, (byte) 0);
+            region.writeChunk(source.getChunkIfExists(1, 0));
+            Assert.assertEquals(size, Files.size(path));
+            Assert.assertEquals(10, region.readChunk(source, 1, 0).getChunkSection(0).getBlockId(0, 0, 0));
+
+            // grows and moves to the end, freeing its old sector
+            Random random = new Random(0);
+            Chunk large = source.getChunkOrCreate(2, 0);
+            for (int i = 0; i < 16 * 16 * 64; i++) {
+                large.setBlock(i & 0xf, i >> 8, i >> 4 & 0xf, (short) random.nextInt(256), (byte) random.nextInt(16));
+            }
+            region.writeChunk(large);
+            long grown = Files.size(path);
+            Assert.assertTrue(grown > size);
+
+            // new chunk takes the freed sector
+            source.getChunkOrCreate(5, 0).setBlock(0, 0, 0, (short) 6, (byte) 0);
+            region.writeChunk(source.getChunkIfExists(5, 0));
+            Assert.assertEquals(grown, Files.size(path));
+        }
+
+        World target = new World(new WorldProperties(128));
+        try (RegionFile region = RegionFile.open(path)) {
+            target.readRegionFile(region);
+        }
+        Assert.assertEquals(5, target.getAllChunks().size());
+        Assert.assertEquals(10, target.getChunkIfExists(1, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertEquals(6, target.getChunkIfExists(5, 0).getChunkSection(0).getBlockId(0, 0, 0));
+        Assert.assertArrayEquals(source.getChunkIfExists(2, 0).serializeArray(),
+                                 target.getChunkIfExists(2, 0).serializeArray());
+    }
+
+    @Test
+    public void testParallelWriteIsIdentical() throws IOException {
+        World world = new World(new WorldProperties(128));
+        Random random = new Random(1);
+        for (int i = 0; i < 64; i++) {
+            Chunk chunk = world.getChunkOrCreate(random.nextInt(32), random.nextInt(32));
+            for (int j = 0; j < 200; j++) {
+                chunk.setBlock(random.nextInt(16), random.nextInt(128), random.nextInt(16),
+                               (short) random.nextInt(256), (byte) 0);
+            }
+        }
+
+        ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+        world.writeRegionFile(0, 0, new DataOutputStream(sequential));
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            world.writeRegionFile(0, 0, new DataOutputStream(parallel), executor);
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+    }
+
+    @Test
+    public void testParallelRead() throws IOException {
+        World source = new World(new WorldProperties(128));
+        for (int i = 0; i < 32; i++) {
+            source.getChunkOrCreate(i, 31 - i).setBlock(i, i, i, (short) (i + 1), (byte) 0);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        source.writeRegionFile(0, 0, new DataOutputStream(bytes));
+        Path path = this.writeRegion(source, 0, 0);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            World fromStream = new World(new WorldProperties(128));
+            fromStream.readRegionFile(0, 0, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                                      executor);
+            World fromFile = new World(new WorldProperties(128));
+            try (RegionFile region = RegionFile.open(path)) {
+                fromFile.readRegionFile(region, executor);
+            }
+            for (World target : new World[]{ fromStream, fromFile }) {
+                Assert.assertEquals(32, target.getAllChunks().size());
+                for (int i = 0; i < 32; i++) {
+                    Assert.assertArrayEquals(source.getChunkIfExists(i, 31 - i).serializeArray(),
+                                             target.getChunkIfExists(i, 31 - i).serializeArray());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCorruptChunk() throws IOException {
+        World source = new World(new WorldProperties(128));
+        source.getChunkOrCreate(0, 0).setBlock(0, 0, 0, (short) 1, (byte) 0);
+        Path path = this.writeRegion(source, 0, 0);
+        byte[] bytes = Files.readAllBytes(path);
+        // break the zlib header of the only chunk
+        bytes[RegionFile.HEADER_LENGTH + 5] = 0;
+        Files.write(path, bytes);
+
+        try {
+            new World(new WorldProperties(128)).readRegionFile(0, 0, new DataInputStream(
+                    new ByteArrayInputStream(bytes)));
+            Assert.fail();
+        } catch (IOException expected) {}
+        try (RegionFile region = RegionFile.open(path)) {
+            new World(new WorldProperties(128)).readRegionFile(region);
+            Assert.fail();
+        } catch (IOException expected) {}
+    }
+
+    @Test
+    public void testRegions() throws IOException {
+        World world = new World(new WorldProperties(128));
+        world.getChunkOrCreate(0, 0);
+        world.getChunkOrCreate(31, 31);
+        world.getChunkOrCreate(-1, -1);
+        world.getChunkOrCreate(-32, -5).setBlock(0, 0, 0, (short) 1, (byte) 0);
+        Assert.assertEquals(2, world.getRegions().size());
+        Assert.assertNull(world.getRegion(1, 0));
+
+        Region region = world.getRegion(-1, -1);
+        Assert.assertEquals(-1, region.getRegionX());
+        Assert.assertEquals(2, region.size());
+        Assert.assertSame(world.getChunkIfExists(-1, -1), region.getChunks().get(1));
+        Assert.assertSame(world.getChunkIfExists(-32, -5), region.getChunk(0, 27));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        world.writeRegionFile(-1, -1, new DataOutputStream(bytes));
+        World target = new World(new WorldProperties(128));
+        target.readRegionFile(-1, -1, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        Assert.assertEquals(1, target.getRegions().size());
+        Assert.assertEquals(1, target.getChunkIfExists(-32, -5).getChunkSection(0).getBlockId(0, 0, 0));
+    }
+}
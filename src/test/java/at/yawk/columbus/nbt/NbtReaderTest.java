@@ -0,0 +1,132 @@
+package at.yawk.columbus.nbt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import org.junit.Test;
+
+public class NbtReaderTest {
+    private NbtReader reader(String resource, boolean zipped) throws IOException {
+        return new NbtReader(new DataInputStream(zipped ?
+                                                         new GZIPInputStream(NbtTest.class.getResourceAsStream(
+                                                                 resource)) :
+                                                         NbtTest.class.getResourceAsStream(resource)));
+    }
+
+    @Test
+    public void testReadSmall() throws IOException {
+        NbtReader reader = this.reader("small.nbt", false);
+        assertEquals(TagType.COMPOUND, reader.peek());
+        assertEquals("hello world", reader.nextName());
+        reader.beginCompound();
+        assertEquals("name", reader.nextName());
+        assertEquals("Bananrama", reader.stringValue());
+        assertFalse(reader.hasNext());
+        reader.endCompound();
+        assertNull(reader.peek());
+    }
+
+    @Test
+    public void testIntArray() throws IOException {
+        int[] values = { 1, -2, 0x12345678, Integer.MIN_VALUE };
+        byte[] data = NBT.serializeArray(new NamedTag("", new TagCompound(new NamedTag("a", new TagArrayInt(values)))));
+        for (NbtReader reader : new NbtReader[]{
+                new NbtReader(new ByteBufferDataInput(ByteBuffer.wrap(data))),
+                new NbtReader(new DataInputStream(new ByteArrayInputStream(data))) }) {
+            reader.nextName();
+            reader.beginCompound();
+            assertEquals("a", reader.nextName());
+            assertArrayEquals(values, reader.intArray());
+            assertFalse(reader.hasNext());
+            reader.endCompound();
+        }
+    }
+
+    @Test
+    public void testReadBig() throws IOException {
+        NbtReader reader = this.reader("big.nbt", true);
+        assertEquals("Level", reader.nextName());
+        reader.beginCompound();
+        int seen = 0;
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+            case "intTest":
+                assertEquals(2147483647, reader.intValue());
+                break;
+            case "shortTest":
+                assertEquals(32767, reader.shortValue());
+                break;
+            case "listTest (long)":
+                assertEquals(5, reader.beginList());
+                for (long l = 11; reader.hasNext(); l++) {
+                    assertEquals(l, reader.longValue());
+                }
+                reader.endList();
+                break;
+            case "listTest (compound)":
+                assertEquals(2, reader.beginList());
+                reader.beginCompound();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("name")) {
+                        assertEquals("Compound tag #0", reader.stringValue());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endCompound();
+                reader.skipValue();
+                reader.endList();
+                break;
+            case "nested compound test":
+                assertEquals(new TagCompound(new NamedTag("name", new TagString("Hampus")),
+                                             new NamedTag("value", new TagFloat(0.75F))),
+                             ((TagCompound) reader.tagValue()).getTag("ham"));
+                break;
+            default:
+                reader.skipValue();
+                continue;
+            }
+            seen++;
+        }
+        reader.endCompound();
+        assertEquals(5, seen);
+    }
+
+    @Test
+    public void testSkipAll() throws IOException {
+        NbtReader reader = this.reader("big.nbt", true);
+        reader.nextName();
+        reader.beginCompound();
+        int entries = 0;
+        while (reader.hasNext()) {
+            if (reader.peek() == TagType.ARRAY_BYTE) {
+                reader.nextName();
+                byte[] array = reader.byteArray();
+                assertEquals(1000, array.length);
+                assertArrayEquals(new byte[]{ 0, 62, 34, 16, 8 }, Arrays.copyOf(array, 5));
+            } else {
+                reader.skipValue();
+            }
+            entries++;
+        }
+        reader.endCompound();
+        assertEquals(11, entries);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWrongType() throws IOException {
+        NbtReader reader = this.reader("small.nbt", false);
+        reader.nextName();
+        reader.beginCompound();
+        reader.nextName();
+        reader.intValue();
+    }
+}
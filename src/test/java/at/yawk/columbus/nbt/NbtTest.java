@@ -1,11 +1,19 @@
 package at.yawk.columbus.nbt;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 
 import org.junit.Test;
 
@@ -97,6 +105,106 @@ public class NbtTest {
         }
     }
     
+    @Test
+    public void testStreamWriteSmall() throws IOException {
+        ByteArrayOutputStream sm = new ByteArrayOutputStream();
+        NbtWriter writer = new NbtWriter(new DataOutputStream(sm));
+        writer.name("hello world");
+        writer.beginCompound();
+        writer.name("name");
+        writer.stringValue("Bananrama");
+        writer.endCompound();
+        assertArrayEquals(NBT.serializeArray(this.small()), sm.toByteArray());
+    }
+
+    @Test
+    public void testByteBufferMatchesStream() throws IOException {
+        NamedTag big = this.big();
+        big.getValue().asCompound().addTag("utf", new TagString("\u0000 \u00e4\u20ac\ud83d\ude00"));
+        big.getValue().asCompound().addTag("ints", new TagArrayInt(new int[]{ 1, -2, 0x12345678 }));
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        NBT.serialize(new DataOutputStream(stream), big);
+        byte[] expected = stream.toByteArray();
+
+        assertArrayEquals(expected, NBT.serializeArray(big));
+        ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        NBT.serialize(Channels.newChannel(channel), big);
+        assertArrayEquals(expected, channel.toByteArray());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(expected.length + 3);
+        direct.put((byte) 42);
+        NBT.serialize(direct, big);
+        assertEquals(expected.length + 1, direct.position());
+        direct.flip();
+        direct.get();
+        assertEquals(big, NBT.deserialize(direct));
+        assertEquals(expected.length + 1, direct.position());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testByteBufferTruncated() throws IOException {
+        byte[] data = NBT.serializeArray(this.small());
+        NBT.deserialize(ByteBuffer.wrap(data, 0, data.length - 1));
+    }
+
+    private static String[] names(NamedTag compound) {
+        return compound.getValue().asCompound().getTags().keySet().toArray(new String[0]);
+    }
+
+    @Test
+    public void testKeyCache() throws IOException {
+        NbtKeyCache previous = NBT.getKeyCache();
+        try {
+            NBT.setKeyCache(new NbtKeyCache(16));
+            TagCompound compound = new TagCompound(new NamedTag("id", new TagString("Pig")),
+                                                   new NamedTag("\u00fcber", new TagInt(1)));
+            byte[] data = NBT.serializeArray(new NamedTag("", compound));
+            String[] first = names(NBT.deserializeArray(data));
+            String[] second = names(NBT.deserializeStream(new ByteArrayInputStream(data)));
+            assertArrayEquals(new String[]{ "id", "\u00fcber" }, first);
+            assertArrayEquals(first, second);
+            assertSame(first[0], second[0]);
+
+            NBT.setKeyCache(null);
+            assertEquals(compound, NBT.deserializeArray(data).getValue());
+        } finally {
+            NBT.setKeyCache(previous);
+        }
+    }
+
+    @Test
+    public void testExtract() throws IOException {
+        byte[] data = NBT.serializeArray(this.big());
+        assertEquals(new TagShort((short) 32767), NBT.extract(ByteBuffer.wrap(data), "shortTest"));
+        assertEquals(new TagFloat(0.75F), NBT.extract(ByteBuffer.wrap(data), "nested compound test", "ham", "value"));
+        assertEquals(null, NBT.extract(ByteBuffer.wrap(data), "nested compound test", "bacon"));
+        assertEquals(null, NBT.extract(ByteBuffer.wrap(data), "intTest", "value"));
+        assertEquals(new TagInt(2147483647),
+                     NBT.extract(new DataInputStream(new ByteArrayInputStream(data)), "intTest"));
+    }
+
+    @Test
+    public void testProjection() throws IOException {
+        byte[] data = NBT.serializeArray(this.big());
+        NbtProjection projection = new NbtProjection().add("nested compound test", "egg", "name")
+                                                      .add("nested compound test", "ham", "value")
+                                                      .add("byteTest")
+                                                      .add("missing", "value");
+        TagCompound expected = new TagCompound();
+        expected.addTag("nested compound test", new TagCompound(
+                new NamedTag("egg", new TagCompound(new NamedTag("name", new TagString("Eggbert")))),
+                new NamedTag("ham", new TagCompound(new NamedTag("value", new TagFloat(0.75F))))));
+        expected.addTag("byteTest", new TagByte((byte) 127));
+        assertEquals(expected, projection.read(ByteBuffer.wrap(data)));
+
+        // a prefix replaces longer paths
+        projection.add("nested compound test");
+        TagCompound nested = projection.read(ByteBuffer.wrap(data));
+        assertEquals(this.big().getValue().asCompound().getTag("nested compound test"),
+                     nested.getTag("nested compound test"));
+        assertEquals(2, nested.size());
+    }
+
     /*
     @Test
     public void testWriteBig() throws IOException {
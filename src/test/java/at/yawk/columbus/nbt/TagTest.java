@@ -1,7 +1,15 @@
 package at.yawk.columbus.nbt;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 
 public class TagTest {
@@ -21,4 +29,117 @@ public class TagTest {
         assertEquals(1, new TagByte((byte) 1).getNumber().intValue());
         assertEquals(1, new TagByte((byte) 1).getDouble(), 0.00001);
     }
+
+    @Test
+    public void testPrimitiveListRoundTrip() throws IOException {
+        TagCompound compound = new TagCompound();
+        compound.addTag("Pos", new TagList(new TagDouble(1.5), new TagDouble(-2), new TagDouble(3)));
+        compound.addTag("Rotation", new TagList(new TagFloat(90), new TagFloat(0)));
+        compound.addTag("Ids", new TagList(new TagInt(1), new TagInt(2)));
+        compound.addTag("Empty", new TagList());
+        byte[] data = NBT.serializeArray(new NamedTag("", compound));
+
+        NamedTag read = NBT.deserializeArray(data);
+        TagCompound readCompound = read.getValue().asCompound();
+        assertTrue(readCompound.getTag("Pos") instanceof TagDoubleList);
+        assertTrue(readCompound.getTag("Rotation") instanceof TagFloatList);
+        assertEquals(compound, readCompound);
+        assertArrayEquals(data, NBT.serializeArray(read));
+
+        TagDoubleList position = (TagDoubleList) readCompound.getTag("Pos");
+        assertEquals(-2, position.getDouble(1), 0);
+        assertEquals(2, readCompound.getTag("Ids").asList().getInt(1));
+        assertEquals(new TagDouble(3), position.getTags().get(2));
+    }
+
+    @Test
+    public void testPrimitiveListModification() {
+        TagDoubleList list = new TagDoubleList(1, 2);
+        list.setDouble(0, 5);
+        list.addDouble(6);
+        list.addTag(new TagDouble(7));
+        list.setTag(1, new TagDouble(8));
+        assertArrayEquals(new double[]{ 5, 8, 6, 7 }, list.toDoubleArray(), 0);
+        assertEquals(new TagList(new TagDouble(5), new TagDouble(8), new TagDouble(6), new TagDouble(7)), list);
+
+        TagDoubleList copy = list.clone();
+        copy.setDouble(0, 0);
+        assertEquals(5, list.getDouble(0), 0);
+    }
+
+    @Test
+    public void testEmptyListAcceptsAnyType() throws IOException {
+        TagCompound compound = new TagCompound(new NamedTag("Entities", new TagList()));
+        TagList read = NBT.deserializeArray(NBT.serializeArray(new NamedTag("", compound)))
+                          .getValue().asCompound().getTag("Entities").asList();
+        read.addTag(new TagCompound());
+        assertEquals(1, read.size());
+    }
+
+    @Test
+    public void testPrimitiveListElementTags() {
+        TagDoubleList list = new TagDoubleList(1, 2);
+        ((TagDouble) list.getTags().get(1)).setValue(5);
+        ((TagDouble) list.getTag(0)).setValue(4);
+        assertArrayEquals(new double[]{ 4, 5 }, list.toDoubleArray(), 0);
+        assertEquals(new TagDouble(5), list.getTag(1));
+        assertEquals(list.getTag(1), new TagDouble(5));
+        assertEquals(new TagDouble(5).hashCode(), list.getTag(1).hashCode());
+
+        TagIntList ints = new TagIntList(1);
+        Tag element = ints.getTag(0);
+        ints.setInt(0, 3);
+        assertEquals(3, ((TagInt) element).getValue());
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void testPrimitiveListRejectsOtherTypes() {
+        new TagDoubleList().addTag(new TagInt(1));
+    }
+
+    @Test
+    public void testCompoundKeepsInsertionOrder() throws IOException {
+        TagCompound compound = new TagCompound();
+        for (int i = 20; i > 0; i--) {
+            compound.addTag("tag" + i, new TagInt(i));
+        }
+        compound.removeTag("tag7");
+        compound.addTag("tag3", new TagInt(-3));
+        assertEquals(19, compound.size());
+        assertEquals(-3, compound.getInt("tag3"));
+        assertEquals(20, compound.getInt("tag20"));
+        assertEquals(1, compound.getInt("tag1"));
+        assertFalse(compound.hasTag("tag7"));
+        assertEquals(42, compound.getInt("tag7", 42));
+
+        List<String> names = new ArrayList<>(compound.getTags().keySet());
+        assertEquals("tag20", names.get(0));
+        assertEquals("tag8", names.get(12));
+        assertEquals("tag6", names.get(13));
+
+        NamedTag read = NBT.deserializeArray(NBT.serializeArray(new NamedTag("", compound)));
+        assertEquals(names, new ArrayList<>(read.getValue().asCompound().getTags().keySet()));
+        assertEquals(compound, read.getValue());
+        assertEquals(compound, compound.clone());
+    }
+
+    @Test
+    public void testCompoundEqualityIgnoresOrder() {
+        TagCompound a = new TagCompound(new NamedTag("x", new TagInt(1)), new NamedTag("y", new TagString("2")));
+        TagCompound b = new TagCompound(new NamedTag("y", new TagString("2")), new NamedTag("x", new TagInt(1)));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        b.addTag("x", new TagInt(2));
+        assertNotEquals(a, b);
+        assertNull(a.getTagIfExists("z"));
+        assertEquals("dflt", a.getString("z", "dflt"));
+    }
+
+    @Test
+    public void testTypes() {
+        for (TagType type : TagType.values()) {
+            assertEquals(type, type.newInstance().getType());
+        }
+        assertEquals(TagType.LIST, new TagDoubleList().getType());
+    }
 }